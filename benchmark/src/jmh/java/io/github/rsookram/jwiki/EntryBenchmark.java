@@ -0,0 +1,67 @@
+package io.github.rsookram.jwiki;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and inflating an entry, as done when serving a page to the WebView.
+ * Run with -p dictionary=true,false to compare against entries compressed with
+ * a preset dictionary.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntryBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public SyntheticWiki.ArticleSize size;
+
+    @Param({"true", "false"})
+    public boolean entryCache;
+
+    private Wiki wiki;
+    private long[] offsets;
+    private int next;
+
+    private final byte[] buffer = new byte[1024 * 16];
+
+    @Setup
+    public void setUp(WikiState state) {
+        wiki = state.wiki;
+
+        List<String> titles = state.synthetic.titles(size);
+        offsets = new long[Math.min(64, Integer.highestOneBit(titles.size()))];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = wiki.getEntryOffset(titles.get(i));
+        }
+    }
+
+    @Benchmark
+    public long getEntryAndInflate() throws IOException {
+        if (!entryCache) {
+            wiki.getEntryCache().evictAll();
+        }
+
+        long offset = offsets[next++ & (offsets.length - 1)];
+
+        long total = 0;
+        try (InputStream is = wiki.getInflatedEntry(offset)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+}
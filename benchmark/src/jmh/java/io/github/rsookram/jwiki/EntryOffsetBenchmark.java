@@ -0,0 +1,81 @@
+package io.github.rsookram.jwiki;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title lookups, as done when following a link. Misses are titles which sort
+ * between existing ones, which the title filter rules out when it's enabled.
+ * batch resolves as many titles as a large article has links at once. With
+ * titleTrie, lookups go through a {@link TitleTrie}, so the other params
+ * don't matter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntryOffsetBenchmark {
+
+    @Param({"true", "false"})
+    public boolean blockCache;
+
+    @Param({"true", "false"})
+    public boolean titleFilter;
+
+    @Param({"false", "true"})
+    public boolean titleTrie;
+
+    private Wiki wiki;
+    private String[] hits;
+    private String[] misses;
+    private List<String> batch;
+    private int next;
+
+    @Setup
+    public void setUp(WikiState state) throws IOException {
+        wiki = state.wiki;
+        wiki.getBlockCache().setMaxBytes(blockCache ? 1024 * 1024 * 4 : 0);
+        wiki.setTitleFilter(titleFilter ? TitleFilter.openOrBuild(wiki) : null);
+        wiki.setTitleTrie(titleTrie ? TitleTrie.openOrBuild(wiki) : null);
+
+        List<String> titles = state.synthetic.titles();
+        Random random = new Random(4);
+        hits = new String[1024];
+        misses = new String[1024];
+        for (int i = 0; i < hits.length; i++) {
+            String title = titles.get(random.nextInt(titles.size()));
+            hits[i] = title;
+            misses[i] = title + '\u0001';
+        }
+
+        batch = Arrays.asList(hits).subList(0, 256);
+    }
+
+    @Benchmark
+    public long hit() {
+        return wiki.getEntryOffset(hits[next++ & (hits.length - 1)]);
+    }
+
+    @Benchmark
+    public long miss() {
+        return wiki.getEntryOffset(misses[next++ & (misses.length - 1)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public long[] batch() {
+        return wiki.getEntryOffsets(batch);
+    }
+}
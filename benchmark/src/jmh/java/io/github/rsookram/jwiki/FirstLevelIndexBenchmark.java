@@ -0,0 +1,41 @@
+package io.github.rsookram.jwiki;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FirstLevelIndexBenchmark {
+
+    private FirstLevelIndex index;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setUp(WikiState state) {
+        index = state.wiki.getFirstLevelIndex();
+
+        List<String> titles = state.synthetic.titles();
+        Random random = new Random(2);
+        keys = new String[1024];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = titles.get(random.nextInt(titles.size()));
+        }
+    }
+
+    @Benchmark
+    public int getOffset() {
+        String key = keys[next++ & (keys.length - 1)];
+        return index.getOffset(key);
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.rsookram.jwiki;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefix searches, as done for every character typed. Short prefixes fill
+ * the result limit, long ones mostly match a single title. nextPage reads the
+ * second page of results, as done when scrolling down the list. titleTrie
+ * answers both from a {@link TitleTrie} instead of the index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int prefixLength;
+
+    @Param({"false", "true"})
+    public boolean titleTrie;
+
+    private Wiki wiki;
+    private String[] prefixes;
+    private Wiki.Cursor[] secondPages;
+    private int next;
+
+    private final Wiki.Cursor cursor = new Wiki.Cursor();
+    private final SearchResults results = new SearchResults();
+
+    @Setup
+    public void setUp(WikiState state) throws IOException {
+        wiki = state.wiki;
+        wiki.setTitleTrie(titleTrie ? TitleTrie.openOrBuild(wiki) : null);
+
+        List<String> candidates = new ArrayList<>();
+        for (String title : state.synthetic.titles()) {
+            if (title.length() >= prefixLength) {
+                candidates.add(title.substring(0, prefixLength));
+            }
+        }
+
+        Random random = new Random(3);
+        prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = candidates.get(random.nextInt(candidates.size()));
+        }
+
+        secondPages = new Wiki.Cursor[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            secondPages[i] = new Wiki.Cursor();
+            wiki.query(prefixes[i], new Wiki.Cursor(), secondPages[i], results);
+        }
+    }
+
+    @Benchmark
+    public SearchResults query() {
+        String prefix = prefixes[next++ & (prefixes.length - 1)];
+        cursor.reset();
+        wiki.query(prefix, cursor, results);
+        return results;
+    }
+
+    @Benchmark
+    public SearchResults nextPage() {
+        int i = next++ & (prefixes.length - 1);
+        cursor.copyFrom(secondPages[i]);
+        wiki.queryNext(prefixes[i], cursor, results);
+        return results;
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.rsookram.jwiki;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A synthetic archive which is shared by every benchmark thread. Generating
+ * it takes a while, so it's kept in the temp directory and reused by later
+ * trials and runs.
+ * <p>
+ * When the jwiki.metrics system property is set, {@link Metrics} are recorded
+ * and printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+public class WikiState {
+
+    // Bumped when the layout written by WikiWriter changes, so that files
+    // cached in the temp directory by older versions aren't reused
+    private static final int LAYOUT = 2;
+
+    @Param("50000")
+    public int numTitles;
+
+    // Whether entries are compressed with a preset dictionary
+    @Param("false")
+    public boolean dictionary;
+
+    public SyntheticWiki synthetic;
+    public Wiki wiki;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        synthetic = new SyntheticWiki(numTitles, 1);
+
+        String name = "jwiki-benchmark-v" + LAYOUT + "-" + numTitles + (dictionary ? "-dictionary" : "") + ".wiki";
+        File file = new File(System.getProperty("java.io.tmpdir"), name);
+        if (!file.exists()) {
+            File tmp = new File(file.getPath() + ".tmp");
+            synthetic.write(tmp, dictionary);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        wiki = new Wiki(file);
+
+        Metrics.reset();
+        Metrics.setEnabled(Boolean.getBoolean("jwiki.metrics"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (Metrics.isEnabled()) {
+            System.out.println();
+            System.out.print(Metrics.report());
+            System.out.println(wiki.getEntryCache() + ", " + wiki.getBlockCache());
+        }
+
+        wiki.close();
+    }
+}
@@ -3,11 +3,14 @@ package io.github.rsookram.jwiki;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.res.AssetManager;
+import android.graphics.Bitmap;
 import android.graphics.Insets;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Trace;
 import android.provider.Settings;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -16,36 +19,49 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowInsets;
+import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
-import android.widget.ArrayAdapter;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.window.OnBackInvokedCallback;
 import android.window.OnBackInvokedDispatcher;
 
-import java.io.ByteArrayInputStream;
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Consumer;
-import java.util.zip.InflaterInputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.CompletableFuture;
 
 public class MainActivity extends Activity {
 
     private static final int REQUEST_PERMISSION = 1;
 
+    private static final int LOAD_MORE_THRESHOLD = 8;
+
     private WebView webView;
     private EditText searchBar;
     private ListView list;
 
     private Adapter adapter;
 
+    // Set once the archives have been opened in the background. Until then,
+    // the latest query is held in queuedQuery.
+    private Archives archives;
+    private Searcher searcher;
+    private SidecarLoader sidecarLoader;
+    private Prefetcher prefetcher;
+    private String queuedQuery;
+
+    // The entry most recently served to the WebView
+    private volatile long servedOffset = -1;
+
     private final OnBackInvokedCallback onBackInvokedCallback = new OnBackInvokedCallback() {
         @Override
         public void onBackInvoked() {
@@ -57,21 +73,41 @@ public class MainActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            enableMetrics();
+        }
+
         setContentView(R.layout.main_activity);
 
         searchBar = findViewById(R.id.search);
         webView = findViewById(R.id.web_view);
         list = findViewById(R.id.list);
 
-        adapter = new Adapter(this, new ArrayList<>(), searchResult -> {
+        adapter = new Adapter();
+        list.setAdapter(adapter);
+        // Item ids are entry offsets
+        list.setOnItemClickListener((parent, view, position, offset) -> {
             searchBar.clearFocus();
             InputMethodManager imm = (InputMethodManager) getSystemService(Activity.INPUT_METHOD_SERVICE);
             imm.hideSoftInputFromWindow(getWindow().getDecorView().getWindowToken(), 0);
 
             searchBar.setText("");
-            loadEntry(searchResult.offset);
+            loadEntry(offset);
+        });
+        list.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                // Start loading the next page a little before reaching the end
+                if (searcher != null && totalItemCount > 0 &&
+                        firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD) {
+                    searcher.loadMore();
+                }
+            }
         });
-        list.setAdapter(adapter);
 
         applySystemUiVisibility();
 
@@ -89,7 +125,8 @@ public class MainActivity extends Activity {
     }
 
     private void setup() {
-        Wiki wiki = Wiki.getInstance();
+        CompletableFuture<Archives> opening = WikiProvider.getInstance(this);
+        opening.thenAcceptAsync(this::onArchivesOpened, getMainExecutor());
 
         AssetManager assets = getAssets();
 
@@ -110,25 +147,50 @@ public class MainActivity extends Activity {
                     return new WebResourceResponse("text/plain", "UTF-8", null);
                 }
 
+                // This is called on a background thread, so loads made
+                // before the archives are open wait here for them.
+                Archives archives = opening.join();
+
                 boolean isOffset = request.getUrl().getBooleanQueryParameter("offset", false);
                 String path = request.getUrl().getPath().substring("/".length());
 
-                byte[] entry;
+                long offset;
                 if (isOffset) {
-                    entry = wiki.getEntry(Long.parseLong(path));
+                    offset = Long.parseLong(path);
                 } else {
-                    long offset = wiki.getEntryOffset(path);
+                    offset = archives.getEntryOffset(path);
                     if (offset < 0) {
-                        offset = wiki.getEntryOffset("HTTP_404");
+                        offset = archives.getNotFoundOffset();
                     }
-
-                    entry = wiki.getEntry(offset);
                 }
+                servedOffset = offset;
 
-                InputStream is = new InflaterInputStream(new ByteArrayInputStream(entry));
+                InputStream is = Metrics.INFLATE.timed(archives.getInflatedEntry(offset));
                 return new WebResourceResponse("text/html", "gzip", is);
             }
 
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                if (prefetcher != null) {
+                    prefetcher.cancel();
+                }
+                if (sidecarLoader != null) {
+                    sidecarLoader.pauseIndexing();
+                }
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                if (sidecarLoader != null) {
+                    sidecarLoader.resumeIndexing();
+                }
+
+                long offset = servedOffset;
+                if (prefetcher != null && offset >= 0) {
+                    prefetcher.prefetchLinksFrom(offset);
+                }
+            }
+
             @Override
             public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
                 if (!view.canGoBack()) {
@@ -156,8 +218,9 @@ public class MainActivity extends Activity {
             public void onTextChanged(CharSequence s, int start, int before, int count) {
                 String query = searchBar.getText().toString();
                 if (query.isEmpty()) {
+                    cancelSearch();
                     list.setVisibility(View.GONE);
-                    adapter.setResults(new ArrayList<>());
+                    adapter.setResults(new SearchResults());
                     lastQuery = "";
                     return;
                 }
@@ -169,14 +232,134 @@ public class MainActivity extends Activity {
                 }
                 lastQuery = query;
 
-                List<SearchResult> results = wiki.query(query);
-                adapter.setResults(results);
+                search(query);
             }
 
             @Override
             public void afterTextChanged(Editable s) {
             }
         });
+
+        // The search key on the keyboard searches the text of articles
+        searchBar.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId != EditorInfo.IME_ACTION_SEARCH) {
+                return false;
+            }
+
+            String query = searchBar.getText().toString();
+            if (!query.isEmpty() && searcher != null) {
+                list.setVisibility(View.VISIBLE);
+                searcher.searchFullText(query);
+            }
+            return true;
+        });
+    }
+
+    private void onArchivesOpened(Archives archives) {
+        if (isDestroyed()) {
+            return;
+        }
+
+        this.archives = archives;
+        sidecarLoader = WikiProvider.getSidecarLoader();
+        searcher = new Searcher(archives, sidecarLoader, adapter::setResults);
+
+        prefetcher = new Prefetcher(archives);
+
+        if (queuedQuery != null) {
+            searcher.search(queuedQuery);
+            queuedQuery = null;
+        }
+    }
+
+    private void search(String query) {
+        if (searcher == null) {
+            queuedQuery = query;
+        } else {
+            searcher.search(query);
+        }
+    }
+
+    private void cancelSearch() {
+        if (searcher == null) {
+            queuedQuery = null;
+        } else {
+            searcher.cancel();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (archives == null) {
+            return;
+        }
+
+        for (Wiki wiki : archives.getWikis()) {
+            EntryCache entryCache = wiki.getEntryCache();
+            BlockCache blockCache = wiki.getBlockCache();
+            if (level >= TRIM_MEMORY_BACKGROUND) {
+                entryCache.evictAll();
+                blockCache.evictAll();
+            } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                entryCache.trimToSize(entryCache.maxBytes() / 2);
+                blockCache.trimToSize(blockCache.maxBytes() / 2);
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (searcher != null) {
+            searcher.shutdown();
+        }
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+    }
+
+    /**
+     * Records timings, which are shown as trace sections in Perfetto and
+     * printed by {@code adb shell dumpsys activity io.github.rsookram.jwiki}.
+     */
+    private static void enableMetrics() {
+        Metrics.setTracer(new Metrics.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                Trace.beginSection(name);
+            }
+
+            @Override
+            public void endSection() {
+                Trace.endSection();
+            }
+        });
+        Metrics.setEnabled(true);
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+
+        writer.print(Metrics.report());
+        if (archives != null) {
+            for (Wiki wiki : archives.getWikis()) {
+                writer.println(wiki.getFile().getName() + ": " + wiki.getEntryCache() + ", " + wiki.getBlockCache());
+
+                TitleTrie trie = wiki.getTitleTrie();
+                if (trie != null) {
+                    writer.println(wiki.getFile().getName() + ": title trie of " + trie.size() + " titles, " +
+                            trie.sizeInBytes() + " B");
+                }
+            }
+        }
     }
 
     void loadEntry(String name) {
@@ -215,33 +398,89 @@ public class MainActivity extends Activity {
         });
     }
 
-    private static class Adapter extends ArrayAdapter<SearchResult> {
+    /**
+     * Shows search results, which change on every keystroke. Item ids are
+     * entry offsets, which aren't stable ids since a title and its redirects
+     * share one, so the list can't tell rows apart by id. New results which are the same as the current ones
+     * aren't rebound at all, and otherwise each row only updates its text
+     * when it's showing something different, since laying out text is the
+     * expensive part of binding.
+     */
+    private static class Adapter extends BaseAdapter {
 
-        private final Consumer<SearchResult> onClick;
+        private SearchResults results = new SearchResults();
 
-        Adapter(Context context, List<SearchResult> items, Consumer<SearchResult> onClick) {
-            super(context, -1 /* unused */, items);
-            this.onClick = onClick;
+        @Override
+        public int getCount() {
+            return results.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return results.getOffset(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return results.getOffset(position);
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return false;
         }
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
-            View view = convertView;
-            if (view == null) {
-                view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_result, parent, false);
+            ViewHolder holder;
+            if (convertView == null) {
+                convertView = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_result, parent, false);
+                holder = new ViewHolder(convertView.findViewById(R.id.name));
+                convertView.setTag(holder);
+            } else {
+                holder = (ViewHolder) convertView.getTag();
             }
 
-            SearchResult item = getItem(position);
-            ((TextView) view.findViewById(R.id.name)).setText(item.key, 0, item.key.length);
+            holder.bind(results, position);
 
-            view.setOnClickListener(v -> onClick.accept(item));
+            return convertView;
+        }
+
+        public void setResults(SearchResults results) {
+            boolean changed = !results.contentEquals(this.results);
+            this.results = results;
+            if (changed) {
+                notifyDataSetChanged();
+            }
+        }
+    }
+
+    private static class ViewHolder {
 
-            return view;
+        private final TextView name;
+
+        // A copy of the key being shown. TextView keeps the array it's given
+        // rather than copying it, and SearchResults are reused.
+        private char[] key = new char[32];
+        private int keyLength = -1;
+
+        ViewHolder(TextView name) {
+            this.name = name;
         }
 
-        public void setResults(List<SearchResult> results) {
-            clear();
-            addAll(results);
+        void bind(SearchResults results, int position) {
+            int length = results.keyLength(position);
+            if (length == keyLength && results.keyEquals(position, key, 0, length)) {
+                return;
+            }
+
+            if (key.length < length) {
+                key = new char[Math.max(key.length * 2, length)];
+            }
+            System.arraycopy(results.keyChars(), results.keyStart(position), key, 0, length);
+            keyLength = length;
+
+            name.setText(key, 0, length);
         }
     }
 }
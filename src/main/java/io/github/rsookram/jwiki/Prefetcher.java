@@ -0,0 +1,166 @@
+package io.github.rsookram.jwiki;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the entries linked from the page being viewed into the entry cache on
+ * a low priority thread, so that following a link doesn't wait on storage.
+ * Only the first few links are prefetched, since links near the top of a page
+ * are the most likely to be followed.
+ * <p>
+ * Work is abandoned by checking a generation counter rather than by
+ * interrupting the thread, since interrupting a read on a FileChannel closes
+ * it for every other reader.
+ */
+class Prefetcher {
+
+    private static final String TAG = "Prefetcher";
+
+    private static final int MAX_LINKS = 8;
+
+    // Leaves most of the entry cache for pages which have been viewed
+    private static final int MAX_BYTES = 1024 * 1024 * 2;
+
+    private static final byte[] HREF = "href=\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final Archives archives;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+    }, "prefetch"));
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+    Prefetcher(Archives archives) {
+        this.archives = archives;
+    }
+
+    /**
+     * Prefetches the pages linked from the entry at offset, replacing any
+     * prefetch which is still running.
+     */
+    void prefetchLinksFrom(long offset) {
+        int prefetchGeneration = generation.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                prefetch(offset, prefetchGeneration);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "failed to prefetch links from " + offset, e);
+            }
+        });
+    }
+
+    /**
+     * Stops the current prefetch, e.g. because the user is navigating away
+     * from the page it's for.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    private void prefetch(long offset, int prefetchGeneration) throws IOException {
+        if (prefetchGeneration != generation.get()) {
+            return;
+        }
+
+        byte[] html;
+        try (InputStream is = archives.getInflatedEntry(offset)) {
+            html = is.readAllBytes();
+        }
+
+        List<String> links = extractLinks(html, MAX_LINKS);
+        long[] offsets = archives.getEntryOffsets(links);
+        if (prefetchGeneration != generation.get()) {
+            return;
+        }
+
+        // Reading in file order keeps seeks short on slow storage. Links which
+        // weren't found (-1) end up first.
+        Arrays.sort(offsets);
+
+        int bytesRead = 0;
+        for (int i = 0; i < offsets.length && bytesRead < MAX_BYTES; i++) {
+            if (prefetchGeneration != generation.get()) {
+                return;
+            }
+            if (offsets[i] < 0) {
+                continue;
+            }
+
+            bytesRead += archives.prefetchEntry(offsets[i]);
+        }
+    }
+
+    /**
+     * Returns the titles of up to max distinct internal links in html, in the
+     * order they appear.
+     */
+    static List<String> extractLinks(byte[] html, int max) {
+        List<String> links = new ArrayList<>();
+
+        int i = 0;
+        while (links.size() < max && (i = indexOf(html, HREF, i)) >= 0) {
+            int start = i + HREF.length;
+            int end = start;
+            while (end < html.length && html[end] != '"' && html[end] != '#' && html[end] != '?') {
+                end++;
+            }
+            i = end;
+
+            String link = toTitle(html, start, end);
+            if (link != null && !links.contains(link)) {
+                links.add(link);
+            }
+        }
+
+        return links;
+    }
+
+    private static String toTitle(byte[] html, int start, int end) {
+        if (start < end && html[start] == '/') {
+            start++;
+        }
+        if (start == end) {
+            return null;
+        }
+
+        String href = new String(html, start, end - start, StandardCharsets.UTF_8);
+        // External links and assets aren't entries
+        if (href.indexOf(':') >= 0 || href.startsWith("-/")) {
+            return null;
+        }
+
+        return Uri.decode(href);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
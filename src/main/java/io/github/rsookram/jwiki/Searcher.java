@@ -0,0 +1,273 @@
+package io.github.rsookram.jwiki;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs queries against the {@link Archives} on a background thread so that typing
+ * never waits on disk. Only the results for the latest query are delivered
+ * (on the main thread). Queries which are superseded before they start are
+ * dropped, and the results of ones which are superseded while running are
+ * discarded.
+ * <p>
+ * When a query has fewer prefix matches than the result limit, the rest are
+ * filled with titles which match it once normalized (see
+ * {@link NormalizedIndex}), and then with titles which contain it elsewhere
+ * (see {@link TitleNgramIndex}), once the {@link SidecarLoader} has loaded
+ * those indexes.
+ * <p>
+ * {@link #searchFullText(String)} searches the text of articles instead,
+ * using each archive's {@link FullTextIndex}.
+ * <p>
+ * Prefix matches are delivered a page at a time. {@link #loadMore()} delivers
+ * the current results plus the next page, resuming each archive's scan where
+ * the previous page ended, so going deeper costs the same as the first page.
+ * <p>
+ * Results are written into pooled {@link SearchResults}. Once new results
+ * are delivered, the ones delivered before them go back to the pool, so the
+ * consumer must stop using them at that point.
+ */
+class Searcher {
+
+    // Queries are started at most this often while typing quickly
+    private static final long DEBOUNCE_MS = 50;
+
+    private static final int POOL_SIZE = 4;
+
+    private final Archives.Search search;
+
+    private final Consumer<SearchResults> onResults;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "search"));
+
+    // Incremented for every query (and cancellation) so that stale work can
+    // tell that it has been superseded.
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Has the optional indexes of each archive, once they're available
+    private final SidecarLoader sidecars;
+
+    // Only accessed on the search thread
+    private final SearchResults extraResults = new SearchResults();
+
+    private final BlockingQueue<SearchResults> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // Only accessed on the main thread
+    private String pendingQuery;
+    private long lastSubmitTime;
+    private SearchResults delivered;
+    private int deliveredGeneration;
+    private boolean hasMore;
+    private boolean loadingMore;
+
+    private final Runnable submit = this::submit;
+
+    Searcher(Archives archives, SidecarLoader sidecars, Consumer<SearchResults> onResults) {
+        this.search = archives.newSearch();
+        this.sidecars = sidecars;
+        this.onResults = onResults;
+    }
+
+    /**
+     * Searches for the given (non-empty) prefix. Must be called on the main
+     * thread.
+     */
+    void search(String query) {
+        generation.incrementAndGet();
+        pendingQuery = query;
+        loadingMore = false;
+
+        mainHandler.removeCallbacks(submit);
+
+        long delay = lastSubmitTime + DEBOUNCE_MS - SystemClock.uptimeMillis();
+        if (delay <= 0) {
+            submit();
+        } else {
+            mainHandler.postDelayed(submit, delay);
+        }
+    }
+
+    /**
+     * Drops any pending query so that its results are never delivered. Must
+     * be called on the main thread.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+        pendingQuery = null;
+        loadingMore = false;
+        mainHandler.removeCallbacks(submit);
+    }
+
+    /**
+     * Stops taking queries. A query which is already running finishes, but
+     * its results are dropped, like any other superseded query. The thread
+     * isn't interrupted, since interrupting a read on a wiki's FileChannel
+     * closes it for every other reader.
+     */
+    void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    private void submit() {
+        String query = pendingQuery;
+        if (query == null) {
+            return;
+        }
+        pendingQuery = null;
+        lastSubmitTime = SystemClock.uptimeMillis();
+
+        int queryGeneration = generation.get();
+        executor.execute(() -> {
+            if (queryGeneration != generation.get()) {
+                return;
+            }
+
+            SearchResults results = pool.poll();
+            if (results == null) {
+                results = new SearchResults();
+            }
+            search.query(query, results);
+            boolean more = search.hasMore();
+            addNormalizedMatches(query, results);
+            addInfixMatches(query, results);
+
+            SearchResults finalResults = results;
+            mainHandler.post(() -> deliver(finalResults, queryGeneration, more));
+        });
+    }
+
+    /**
+     * Searches the text of articles for query, replacing any pending query.
+     * Results come from each archive in order, best matches first, and all
+     * arrive at once. Must be called on the main thread.
+     */
+    void searchFullText(String query) {
+        int queryGeneration = generation.incrementAndGet();
+        pendingQuery = null;
+        loadingMore = false;
+        mainHandler.removeCallbacks(submit);
+
+        executor.execute(() -> {
+            if (queryGeneration != generation.get()) {
+                return;
+            }
+
+            SearchResults results = pool.poll();
+            if (results == null) {
+                results = new SearchResults();
+            }
+            results.clear();
+            for (int archive = 0; archive < sidecars.size(); archive++) {
+                FullTextIndex index = sidecars.getFullTextIndex(archive);
+                if (index == null || results.size() >= Wiki.QUERY_LIMIT) {
+                    continue;
+                }
+
+                index.search(query, extraResults);
+                addMissing(archive, extraResults, results);
+            }
+
+            SearchResults finalResults = results;
+            mainHandler.post(() -> deliver(finalResults, queryGeneration, false));
+        });
+    }
+
+    /**
+     * Delivers the next page of results for the current query, if there is
+     * one and it isn't already loading. Must be called on the main thread.
+     */
+    void loadMore() {
+        int queryGeneration = generation.get();
+        if (!hasMore || loadingMore || deliveredGeneration != queryGeneration) {
+            return;
+        }
+        loadingMore = true;
+
+        SearchResults current = delivered;
+        executor.execute(() -> {
+            if (queryGeneration != generation.get()) {
+                return;
+            }
+
+            SearchResults results = pool.poll();
+            if (results == null) {
+                results = new SearchResults();
+            }
+            results.copyFrom(current);
+            search.queryMore(results);
+            boolean more = search.hasMore();
+
+            SearchResults finalResults = results;
+            mainHandler.post(() -> deliver(finalResults, queryGeneration, more));
+        });
+    }
+
+    private void addNormalizedMatches(String query, SearchResults results) {
+        String normalized = null;
+        for (int archive = 0; archive < sidecars.size(); archive++) {
+            NormalizedIndex index = sidecars.getNormalizedIndex(archive);
+            if (index == null || results.size() >= Wiki.QUERY_LIMIT) {
+                continue;
+            }
+
+            if (normalized == null) {
+                normalized = KeyNormalizer.normalize(query);
+            }
+            index.search(normalized, extraResults);
+            addMissing(archive, extraResults, results);
+        }
+    }
+
+    private void addInfixMatches(String query, SearchResults results) {
+        for (int archive = 0; archive < sidecars.size(); archive++) {
+            TitleNgramIndex index = sidecars.getInfixIndex(archive);
+            if (index == null || results.size() >= Wiki.QUERY_LIMIT) {
+                continue;
+            }
+
+            index.search(query, extraResults);
+            addMissing(archive, extraResults, results);
+        }
+    }
+
+    /**
+     * Adds the results in from (which came from the given archive) which
+     * aren't already in to, up to the limit.
+     */
+    private static void addMissing(int archive, SearchResults from, SearchResults to) {
+        for (int i = 0; i < from.size() && to.size() < Wiki.QUERY_LIMIT; i++) {
+            long offset = Archives.tag(archive, from.getOffset(i));
+            if (to.indexOfOffset(offset) < 0) {
+                to.add(from.keyChars(), from.keyStart(i), from.keyLength(i), offset);
+            }
+        }
+    }
+
+    private void deliver(SearchResults results, int queryGeneration, boolean more) {
+        if (queryGeneration != generation.get()) {
+            pool.offer(results);
+            return;
+        }
+
+        deliveredGeneration = queryGeneration;
+        hasMore = more;
+        loadingMore = false;
+
+        onResults.accept(results);
+
+        if (delivered != null) {
+            pool.offer(delivered);
+        }
+        delivered = results;
+    }
+}
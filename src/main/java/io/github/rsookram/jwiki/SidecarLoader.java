@@ -0,0 +1,226 @@
+package io.github.rsookram.jwiki;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Opens the optional indexes stored next to each wiki, building any which are
+ * missing or out of date, one at a time on a low priority thread. Each is
+ * handed off as soon as it's ready, and until then, features which need it
+ * are skipped.
+ * <p>
+ * Before that, each wiki's second level index is read into memory, and a
+ * snapshot of its first level index is saved to speed up the next launch.
+ * <p>
+ * The {@link TitleTrie} of each wiki is only loaded when enabled, since it's
+ * held in memory, which low RAM devices can't spare.
+ * <p>
+ * Last of all, the full text index of each wiki is built (or resumed) in
+ * parallel on the other cores. This takes a long time, so it's throttled,
+ * and paused while pages load.
+ * <p>
+ * There's one for the process, owned by {@link WikiProvider} along with the
+ * {@link Archives}, so the work is done once rather than per activity, and
+ * the indexes outlive any activity which searches them.
+ */
+class SidecarLoader {
+
+    private static final String TAG = "SidecarLoader";
+
+    // The share of time spent building the full text index
+    private static final float INDEXING_DUTY_CYCLE = 0.5f;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+    }, "sidecars"));
+
+    // Leaves a core for the UI
+    private final int indexingThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private final ExecutorService indexingExecutor = Executors.newFixedThreadPool(indexingThreads, r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+    }, "full-text"));
+
+    private final List<Wiki> wikis;
+    private final boolean useTitleTrie;
+
+    // Per archive, set once they're available
+    private final AtomicReferenceArray<NormalizedIndex> normalizedIndexes;
+    private final AtomicReferenceArray<TitleNgramIndex> infixIndexes;
+    private final AtomicReferenceArray<FullTextIndex> fullTextIndexes;
+
+    // The indexer which is running, if any. Guarded by this.
+    private FullTextIndexer indexer;
+    private boolean indexingPaused;
+
+    SidecarLoader(Archives archives, boolean useTitleTrie) {
+        this.wikis = archives.getWikis();
+        this.useTitleTrie = useTitleTrie;
+        this.normalizedIndexes = new AtomicReferenceArray<>(wikis.size());
+        this.infixIndexes = new AtomicReferenceArray<>(wikis.size());
+        this.fullTextIndexes = new AtomicReferenceArray<>(wikis.size());
+    }
+
+    /**
+     * Starts loading in the background. Must only be called once.
+     */
+    void start() {
+        for (Wiki wiki : wikis) {
+            executor.execute(() -> warmUp(wiki));
+        }
+        for (int i = 0; i < wikis.size(); i++) {
+            int archive = i;
+            Wiki wiki = wikis.get(i);
+            executor.execute(() -> load(archive, wiki));
+        }
+        for (int i = 0; i < wikis.size(); i++) {
+            int archive = i;
+            Wiki wiki = wikis.get(i);
+            executor.execute(() -> buildFullTextIndex(archive, wiki));
+        }
+    }
+
+    int size() {
+        return wikis.size();
+    }
+
+    /**
+     * Returns the index of the given archive for titles which match a query
+     * after normalizing kana, width and case, or null if it isn't available
+     * (yet). Can be called from any thread.
+     */
+    NormalizedIndex getNormalizedIndex(int archive) {
+        return normalizedIndexes.get(archive);
+    }
+
+    /**
+     * Returns the index of the given archive for titles which contain a
+     * query, or null if it isn't available (yet). Can be called from any
+     * thread.
+     */
+    TitleNgramIndex getInfixIndex(int archive) {
+        return infixIndexes.get(archive);
+    }
+
+    /**
+     * Returns the index of the text of the given archive's articles, or null
+     * if it isn't available (yet). It may still be being built, in which case
+     * it covers the articles indexed so far. Can be called from any thread.
+     */
+    FullTextIndex getFullTextIndex(int archive) {
+        return fullTextIndexes.get(archive);
+    }
+
+    private static void warmUp(Wiki wiki) {
+        wiki.warmUp();
+
+        try {
+            wiki.saveSnapshot();
+        } catch (IOException e) {
+            Log.w(TAG, "failed to save snapshot for " + wiki.getFile(), e);
+        }
+    }
+
+    private void load(int archive, Wiki wiki) {
+        // First, since it speeds up following links rather than enabling a
+        // feature
+        try {
+            wiki.setTitleFilter(TitleFilter.openOrBuild(wiki));
+        } catch (IOException e) {
+            Log.w(TAG, "failed to open title filter for " + wiki.getFile(), e);
+        }
+
+        // Shared by the indexes which need to turn matches back into titles
+        TitleTable titles = null;
+        try {
+            titles = TitleTable.openOrBuild(wiki);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to open title table for " + wiki.getFile(), e);
+        }
+
+        if (titles != null) {
+            try {
+                normalizedIndexes.set(archive, NormalizedIndex.openOrBuild(wiki, titles));
+            } catch (IOException e) {
+                Log.w(TAG, "failed to open normalized index for " + wiki.getFile(), e);
+            }
+
+            try {
+                infixIndexes.set(archive, TitleNgramIndex.openOrBuild(wiki, titles));
+            } catch (IOException e) {
+                Log.w(TAG, "failed to open title n-gram index for " + wiki.getFile(), e);
+            }
+        }
+
+        if (useTitleTrie) {
+            try {
+                TitleTrie trie = TitleTrie.openOrBuild(wiki);
+                wiki.setTitleTrie(trie);
+                Log.i(TAG, "loaded title trie for " + wiki.getFile() + ": " + trie.sizeInBytes() + " B");
+            } catch (IOException e) {
+                Log.w(TAG, "failed to open title trie for " + wiki.getFile(), e);
+            }
+        }
+    }
+
+    private void buildFullTextIndex(int archive, Wiki wiki) {
+        FullTextIndex index;
+        try {
+            index = FullTextIndex.open(wiki);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to open full text index for " + wiki.getFile(), e);
+            return;
+        }
+
+        // Searches cover whatever has been indexed so far
+        fullTextIndexes.set(archive, index);
+        if (index.isComplete()) {
+            return;
+        }
+
+        FullTextIndexer indexer = new FullTextIndexer(index, indexingExecutor, indexingThreads);
+        indexer.setDutyCycle(INDEXING_DUTY_CYCLE);
+        synchronized (this) {
+            if (indexingPaused) {
+                indexer.pause();
+            }
+            this.indexer = indexer;
+        }
+
+        try {
+            indexer.run();
+        } catch (IOException e) {
+            Log.w(TAG, "failed to build full text index for " + wiki.getFile(), e);
+        } finally {
+            synchronized (this) {
+                this.indexer = null;
+            }
+        }
+    }
+
+    /**
+     * Pauses building the full text index, e.g. while a page is loading, so
+     * that it doesn't compete for storage.
+     */
+    synchronized void pauseIndexing() {
+        indexingPaused = true;
+        if (indexer != null) {
+            indexer.pause();
+        }
+    }
+
+    synchronized void resumeIndexing() {
+        indexingPaused = false;
+        if (indexer != null) {
+            indexer.resume();
+        }
+    }
+}
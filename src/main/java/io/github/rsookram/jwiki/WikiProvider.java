@@ -0,0 +1,85 @@
+package io.github.rsookram.jwiki;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Environment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the {@link Archives} opened from the documents directory, which are
+ * shared by everything in the app. wikipedia.wiki comes first, so that its
+ * articles win when titles collide, followed by any other .wiki files in
+ * name order.
+ * <p>
+ * Opening reads the index of each archive, so it happens on a background
+ * thread to keep it from delaying the first frame. Once they're open, the
+ * process's {@link SidecarLoader} starts loading their optional indexes.
+ */
+class WikiProvider {
+
+    private static final String NAME = "wikipedia.wiki";
+    private static final String EXTENSION = ".wiki";
+
+    private static CompletableFuture<Archives> instance;
+
+    // Set before instance completes
+    private static volatile SidecarLoader sidecarLoader;
+
+    static synchronized CompletableFuture<Archives> getInstance(Context context) {
+        if (instance == null) {
+            // The title trie is kept in memory, which low RAM devices can't
+            // spare
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            boolean useTitleTrie = !activityManager.isLowRamDevice();
+
+            CompletableFuture<Archives> future = new CompletableFuture<>();
+            new Thread(() -> {
+                try {
+                    Archives archives = open();
+
+                    SidecarLoader loader = new SidecarLoader(archives, useTitleTrie);
+                    loader.start();
+                    sidecarLoader = loader;
+
+                    future.complete(archives);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }, "open").start();
+
+            instance = future;
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the loader for the optional indexes of the archives. Only
+     * non-null once the future from {@link #getInstance(Context)} has
+     * completed.
+     */
+    static SidecarLoader getSidecarLoader() {
+        return sidecarLoader;
+    }
+
+    private static Archives open() {
+        File dir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+
+        List<Wiki> wikis = new ArrayList<>();
+        wikis.add(new Wiki(new File(dir, NAME)));
+
+        File[] others = dir.listFiles((d, name) -> name.endsWith(EXTENSION) && !name.equals(NAME));
+        if (others != null) {
+            Arrays.sort(others);
+            for (File f : others) {
+                wikis.add(new Wiki(f));
+            }
+        }
+
+        return new Archives(wikis);
+    }
+}
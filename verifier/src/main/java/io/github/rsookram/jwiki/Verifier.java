@@ -0,0 +1,376 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks that everything in a .wiki file can be read: that the keys of the
+ * index are in order, that each points at an entry within the file, and that
+ * every entry inflates. This reads the whole file, so it also measures how
+ * fast entries can be decoded with all cores busy.
+ * <p>
+ * The index is checked a first level block at a time on a fork-join pool.
+ * The entries found there are then deduplicated (titles can share an entry),
+ * sorted so that they're read in file order, and split into ranges for the
+ * same pool to inflate.
+ * <p>
+ * Usage: {@code verifier <file.wiki> [threads]}. Exits with 1 if anything is
+ * wrong.
+ */
+public class Verifier {
+
+    // Enough to outweigh the cost of forking a task
+    private static final int ENTRIES_PER_TASK = 256;
+
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final double BYTES_PER_MB = 1000 * 1000;
+
+    private final Wiki wiki;
+    private final ForkJoinPool pool;
+
+    // Index errors, by slot
+    private final Map<Integer, String> blockErrors = new ConcurrentSkipListMap<>();
+
+    // Entry errors, by offset
+    private final Map<Long, String> entryErrors = new ConcurrentSkipListMap<>();
+
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder inflatedBytes = new LongAdder();
+
+    // Time spent by each task inflating, summed over all of them
+    private final LongAdder inflateNanos = new LongAdder();
+
+    Verifier(Wiki wiki, ForkJoinPool pool) {
+        this.wiki = wiki;
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: verifier <file.wiki> [threads]");
+            System.exit(2);
+        }
+
+        File file = new File(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean ok;
+        // The snapshot is skipped so that the index in the file is checked
+        try (Wiki wiki = new Wiki(file, false)) {
+            ok = new Verifier(wiki, pool).run(System.out);
+        } finally {
+            pool.shutdown();
+        }
+
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Verifies the whole wiki, printing a report to out. Returns whether
+     * nothing was wrong.
+     */
+    boolean run(PrintStream out) {
+        FirstLevelIndex firstLevelIndex = wiki.getFirstLevelIndex();
+        Block[] blocks = new Block[firstLevelIndex.size()];
+
+        long indexStart = System.nanoTime();
+        pool.invoke(new CheckBlocks(blocks, 0, blocks.length));
+        checkBetweenBlocks(firstLevelIndex, blocks);
+        long indexNanos = System.nanoTime() - indexStart;
+
+        long[] offsets = uniqueOffsets(blocks);
+        long inflateStart = System.nanoTime();
+        pool.invoke(new InflateEntries(offsets, 0, offsets.length));
+        long inflateNanos = System.nanoTime() - inflateStart;
+
+        long numKeys = 0;
+        for (Block block : blocks) {
+            numKeys += block != null ? block.numKeys : 0;
+        }
+
+        out.println(wiki.getFile());
+        out.printf("checked %d keys in %d blocks in %d ms%n", numKeys, blocks.length, indexNanos / 1_000_000);
+        out.printf("inflated %d entries, %.1f MB to %.1f MB, in %d ms on %d threads%n",
+                offsets.length,
+                compressedBytes.sum() / BYTES_PER_MB,
+                inflatedBytes.sum() / BYTES_PER_MB,
+                inflateNanos / 1_000_000,
+                pool.getParallelism());
+        out.printf("%.1f MB/s inflated, %.1f MB/s per core%n",
+                mbPerSecond(inflatedBytes.sum(), inflateNanos),
+                mbPerSecond(inflatedBytes.sum(), this.inflateNanos.sum()));
+
+        printErrors(out);
+
+        return blockErrors.isEmpty() && entryErrors.isEmpty();
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes / BYTES_PER_MB / (nanos / 1e9);
+    }
+
+    /**
+     * Checks what can't be checked a block at a time: that each block starts
+     * with its first level key, and that keys stay in order from one block
+     * to the next.
+     */
+    private void checkBetweenBlocks(FirstLevelIndex firstLevelIndex, Block[] blocks) {
+        char[] firstLevelKeys = firstLevelIndex.keyChars();
+        int keyLength = FirstLevelIndex.KEY_LENGTH;
+
+        Block previous = null;
+        for (int slot = 0; slot < blocks.length; slot++) {
+            Block block = blocks[slot];
+            if (block == null) {
+                continue;
+            }
+
+            char[] expected = new char[keyLength];
+            block.firstKey.getChars(0, Math.min(block.firstKey.length(), keyLength), expected, 0);
+            if (!Arrays.equals(firstLevelKeys, slot * keyLength, (slot + 1) * keyLength, expected, 0, keyLength)) {
+                String actual = new String(firstLevelKeys, slot * keyLength, keyLength);
+                blockErrors.put(slot, "first level key " + quote(actual) + " doesn't match " + quote(block.firstKey));
+            }
+
+            if (previous != null && previous.lastKey.compareTo(block.firstKey) >= 0) {
+                blockErrors.put(slot, "first key " + quote(block.firstKey) +
+                        " isn't after the previous block's last key " + quote(previous.lastKey));
+            }
+
+            previous = block;
+        }
+    }
+
+    private static long[] uniqueOffsets(Block[] blocks) {
+        int total = 0;
+        for (Block block : blocks) {
+            total += block != null ? block.numOffsets : 0;
+        }
+
+        long[] offsets = new long[total];
+        int i = 0;
+        for (Block block : blocks) {
+            if (block != null) {
+                System.arraycopy(block.offsets, 0, offsets, i, block.numOffsets);
+                i += block.numOffsets;
+            }
+        }
+        Arrays.sort(offsets);
+
+        int unique = 0;
+        for (int j = 0; j < offsets.length; j++) {
+            if (j == 0 || offsets[j] != offsets[j - 1]) {
+                offsets[unique++] = offsets[j];
+            }
+        }
+
+        return Arrays.copyOf(offsets, unique);
+    }
+
+    private void printErrors(PrintStream out) {
+        int numErrors = blockErrors.size() + entryErrors.size();
+        if (numErrors == 0) {
+            out.println("no errors");
+            return;
+        }
+
+        out.println(numErrors + " errors");
+
+        int printed = 0;
+        for (Map.Entry<Integer, String> e : blockErrors.entrySet()) {
+            if (printed++ >= MAX_REPORTED_ERRORS) {
+                break;
+            }
+            out.println("  block " + e.getKey() + ": " + e.getValue());
+        }
+
+        Map<Long, String> titles = titlesOf(entryErrors.keySet().toArray(new Long[0]));
+        for (Map.Entry<Long, String> e : entryErrors.entrySet()) {
+            if (printed++ >= MAX_REPORTED_ERRORS) {
+                break;
+            }
+            String title = titles.get(e.getKey());
+            out.println("  entry " + e.getKey() + (title != null ? " " + quote(title) : "") + ": " + e.getValue());
+        }
+
+        if (printed > MAX_REPORTED_ERRORS) {
+            out.println("  ...");
+        }
+    }
+
+    /**
+     * Looks up a title for each of the given offsets, for reporting bad
+     * entries. This is a pass over the whole index, so it's only done once
+     * there are errors.
+     */
+    private Map<Long, String> titlesOf(Long[] offsets) {
+        Map<Long, String> titles = new TreeMap<>();
+        if (offsets.length == 0 || !blockErrors.isEmpty()) {
+            return titles;
+        }
+
+        long[] sorted = new long[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            sorted[i] = offsets[i];
+        }
+        Arrays.sort(sorted);
+
+        wiki.forEachKey((key, keyLength, entryOffset) -> {
+            if (Arrays.binarySearch(sorted, entryOffset) >= 0) {
+                titles.putIfAbsent(entryOffset, new String(key, 0, keyLength));
+            }
+        });
+        return titles;
+    }
+
+    private static String quote(String s) {
+        return '"' + s + '"';
+    }
+
+    /**
+     * What's needed from a block once it's been checked.
+     */
+    private static final class Block {
+        String firstKey;
+        String lastKey;
+        int numKeys;
+
+        // The first numOffsets are the entries its keys point at
+        long[] offsets = new long[64];
+        int numOffsets;
+    }
+
+    private final class CheckBlocks extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Block[] blocks;
+        private final int from;
+        private final int to;
+
+        CheckBlocks(Block[] blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CheckBlocks(blocks, from, mid), new CheckBlocks(blocks, mid, to));
+            } else if (to - from == 1) {
+                blocks[from] = checkBlock(from);
+            }
+        }
+
+        /**
+         * Returns the checked block, or null if it couldn't be read.
+         */
+        private Block checkBlock(int slot) {
+            Block block = new Block();
+            try {
+                wiki.forEachKeyInBlock(slot, new BlockChecker(block, wiki.entriesEnd()));
+            } catch (IOException | IllegalStateException e) {
+                blockErrors.put(slot, e.getMessage());
+                return null;
+            }
+
+            return block;
+        }
+    }
+
+    /**
+     * Checks each key of a block against the one before it, and collects the
+     * entries they point at.
+     */
+    private static final class BlockChecker implements Wiki.KeyVisitor {
+
+        private final Block block;
+        private final long entriesEnd;
+
+        BlockChecker(Block block, long entriesEnd) {
+            this.block = block;
+            this.entriesEnd = entriesEnd;
+        }
+
+        @Override
+        public void visit(char[] key, int keyLength, long entryOffset) {
+            String s = new String(key, 0, keyLength);
+            if (block.lastKey != null && block.lastKey.compareTo(s) >= 0) {
+                throw new IllegalStateException(quote(s) + " isn't after " + quote(block.lastKey));
+            }
+            if (entryOffset >= entriesEnd) {
+                throw new IllegalStateException(quote(s) + " points at " + entryOffset +
+                        ", past the end of the entries " + entriesEnd);
+            }
+
+            if (block.firstKey == null) {
+                block.firstKey = s;
+            }
+            block.lastKey = s;
+            block.numKeys++;
+
+            if (block.numOffsets == block.offsets.length) {
+                block.offsets = Arrays.copyOf(block.offsets, block.offsets.length * 2);
+            }
+            block.offsets[block.numOffsets++] = entryOffset;
+        }
+    }
+
+    private final class InflateEntries extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] offsets;
+        private final int from;
+        private final int to;
+
+        InflateEntries(long[] offsets, int from, int to) {
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ENTRIES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new InflateEntries(offsets, from, mid), new InflateEntries(offsets, mid, to));
+                return;
+            }
+
+            long start = System.nanoTime();
+            byte[] buffer = new byte[1024 * 64];
+            for (int i = from; i < to; i++) {
+                try {
+                    byte[] entry = wiki.readEntryBytes(offsets[i]);
+                    compressedBytes.add(entry.length);
+
+                    long inflated = 0;
+                    try (InputStream in = wiki.inflate(entry)) {
+                        int n;
+                        while ((n = in.read(buffer)) >= 0) {
+                            inflated += n;
+                        }
+                    }
+                    inflatedBytes.add(inflated);
+                } catch (IOException e) {
+                    entryErrors.put(offsets[i], e.toString());
+                }
+            }
+            inflateNanos.add(System.nanoTime() - start);
+        }
+    }
+}
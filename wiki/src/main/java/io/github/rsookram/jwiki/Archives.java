@@ -0,0 +1,322 @@
+package io.github.rsookram.jwiki;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Several {@link Wiki}s (e.g. Wikipedia and Wiktionary, or one dump split by
+ * size) used as one. Entry offsets returned from here have the index of the
+ * archive they came from in their upper bits, so that they can be routed back
+ * to it. Offsets from the first archive are unchanged.
+ */
+public class Archives implements Closeable {
+
+    // Offsets within an archive are 5 bytes
+    private static final int ARCHIVE_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << ARCHIVE_SHIFT) - 1;
+
+    // The entry wiki-builder adds for links to missing pages
+    private static final String NOT_FOUND_TITLE = "HTTP_404";
+
+    // Marks notFoundOffset as not looked up yet
+    private static final long UNRESOLVED = Long.MIN_VALUE;
+
+    private final List<Wiki> wikis;
+
+    private volatile long notFoundOffset = UNRESOLVED;
+
+    // Runs the searches for all but the first archive. Null when there's only
+    // one archive.
+    private final ExecutorService executor;
+
+    public Archives(List<Wiki> wikis) {
+        if (wikis.isEmpty()) {
+            throw new IllegalArgumentException("no archives");
+        }
+
+        this.wikis = Collections.unmodifiableList(new ArrayList<>(wikis));
+        this.executor = wikis.size() == 1 ? null : Executors.newFixedThreadPool(wikis.size() - 1, r -> {
+            Thread thread = new Thread(r, "archive-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static long tag(int archive, long offset) {
+        return (long) archive << ARCHIVE_SHIFT | offset;
+    }
+
+    public static int archiveOf(long taggedOffset) {
+        return (int) (taggedOffset >>> ARCHIVE_SHIFT);
+    }
+
+    public List<Wiki> getWikis() {
+        return wikis;
+    }
+
+    /**
+     * Looks up name in each archive in order, returning the tagged offset of
+     * the first match, or -1.
+     */
+    public long getEntryOffset(String name) {
+        for (int i = 0; i < wikis.size(); i++) {
+            long offset = wikis.get(i).getEntryOffset(name);
+            if (offset >= 0) {
+                return tag(i, offset);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the tagged offset of the page to show in place of a missing
+     * one, or -1 if there isn't one. It's looked up once, since pages with
+     * many missing links would otherwise look it up over and over.
+     */
+    public long getNotFoundOffset() {
+        long offset = notFoundOffset;
+        if (offset == UNRESOLVED) {
+            offset = getEntryOffset(NOT_FOUND_TITLE);
+            notFoundOffset = offset;
+        }
+        return offset;
+    }
+
+    /**
+     * Like {@link #getEntryOffset(String)} for each of names, resolved in
+     * batches with {@link Wiki#getEntryOffsets(Collection)}. Each archive
+     * after the first is only asked for the names which weren't found in the
+     * ones before it.
+     */
+    public long[] getEntryOffsets(Collection<String> names) {
+        List<String> remaining = new ArrayList<>(names);
+        long[] offsets = new long[remaining.size()];
+        Arrays.fill(offsets, -1);
+
+        // Indexes into offsets of the names in remaining
+        int[] positions = new int[remaining.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+
+        for (int archive = 0; archive < wikis.size() && !remaining.isEmpty(); archive++) {
+            long[] found = wikis.get(archive).getEntryOffsets(remaining);
+
+            List<String> missing = new ArrayList<>();
+            int numMissing = 0;
+            for (int i = 0; i < found.length; i++) {
+                if (found[i] >= 0) {
+                    offsets[positions[i]] = tag(archive, found[i]);
+                } else {
+                    missing.add(remaining.get(i));
+                    positions[numMissing++] = positions[i];
+                }
+            }
+            remaining = missing;
+        }
+
+        return offsets;
+    }
+
+    public InputStream getEntry(long taggedOffset) {
+        return wikis.get(archiveOf(taggedOffset)).getEntry(taggedOffset & OFFSET_MASK);
+    }
+
+    public InputStream getInflatedEntry(long taggedOffset) {
+        return wikis.get(archiveOf(taggedOffset)).getInflatedEntry(taggedOffset & OFFSET_MASK);
+    }
+
+    /**
+     * See {@link Wiki#prefetchEntry(long)}.
+     */
+    public int prefetchEntry(long taggedOffset) {
+        return wikis.get(archiveOf(taggedOffset)).prefetchEntry(taggedOffset & OFFSET_MASK);
+    }
+
+    /**
+     * Creates a search which queries every archive in parallel. Like
+     * {@link IncrementalSearch}, it's meant to be used from a single thread.
+     */
+    public Search newSearch() {
+        return new Search();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (Wiki wiki : wikis) {
+            wiki.close();
+        }
+    }
+
+    public class Search {
+
+        private final IncrementalSearch[] searches = new IncrementalSearch[wikis.size()];
+
+        // The results of each archive which haven't been merged yet are
+        // partials[i] from heads[i] on. nexts[i] is where its next page starts.
+        private final SearchResults[] partials = new SearchResults[wikis.size()];
+        private final int[] heads = new int[wikis.size()];
+        private final Wiki.Cursor[] nexts = new Wiki.Cursor[wikis.size()];
+
+        private final Future<?>[] futures = new Future<?>[wikis.size()];
+
+        private String prefix;
+
+        private Search() {
+            for (int i = 0; i < searches.length; i++) {
+                searches[i] = new IncrementalSearch(wikis.get(i));
+                partials[i] = new SearchResults();
+                nexts[i] = new Wiki.Cursor();
+            }
+        }
+
+        /**
+         * Searches every archive for prefix at once, then merges their
+         * (sorted) results into out, up to {@link Wiki#QUERY_LIMIT}. The time
+         * taken is bounded by the slowest archive rather than the sum of them.
+         */
+        public void query(String prefix, SearchResults out) {
+            this.prefix = prefix;
+
+            for (int i = 1; i < searches.length; i++) {
+                IncrementalSearch search = searches[i];
+                SearchResults partial = partials[i];
+                Wiki.Cursor next = nexts[i];
+                futures[i] = executor.submit(() -> search.query(prefix, partial, next));
+            }
+
+            // The calling thread handles the first archive instead of waiting
+            searches[0].query(prefix, partials[0], nexts[0]);
+
+            awaitOthers();
+
+            Arrays.fill(heads, 0);
+            out.clear();
+            merge(out);
+        }
+
+        /**
+         * Waits for the searches of every archive but the first. This keeps
+         * waiting when interrupted, since they write to partials, so
+         * returning early would let them overlap with the next query. The
+         * interrupt is restored afterwards for the caller to handle.
+         */
+        private void awaitOthers() {
+            boolean interrupted = false;
+            Throwable failure = null;
+            for (int i = 1; i < futures.length; i++) {
+                while (futures[i] != null) {
+                    try {
+                        futures[i].get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        continue;
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause();
+                        }
+                    }
+                    futures[i] = null;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+
+        /**
+         * Appends the next page of results for the last query to out, resuming
+         * each archive's scan where it left off.
+         */
+        public void queryMore(SearchResults out) {
+            if (prefix != null) {
+                merge(out);
+            }
+        }
+
+        /**
+         * Whether {@link #queryMore(SearchResults)} may find more results.
+         */
+        public boolean hasMore() {
+            if (prefix == null) {
+                return false;
+            }
+
+            for (int i = 0; i < partials.length; i++) {
+                if (heads[i] < partials[i].size() || canFetch(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * A k-way merge of the partial results by key, which fetches the next
+         * page of an archive once its partial results run out. There are only
+         * a few archives, so the smallest head is found with a linear scan.
+         */
+        private void merge(SearchResults out) {
+            int limit = out.size() + Wiki.QUERY_LIMIT;
+            while (out.size() < limit) {
+                int min = -1;
+                for (int i = 0; i < partials.length; i++) {
+                    if (heads[i] == partials[i].size() && canFetch(i)) {
+                        wikis.get(i).queryNext(prefix, nexts[i], partials[i]);
+                        heads[i] = 0;
+                    }
+
+                    if (heads[i] < partials[i].size() &&
+                            (min < 0 || compare(partials[i], heads[i], partials[min], heads[min]) < 0)) {
+                        min = i;
+                    }
+                }
+                if (min < 0) {
+                    break;
+                }
+
+                SearchResults partial = partials[min];
+                int head = heads[min]++;
+                out.add(partial.keyChars(), partial.keyStart(head), partial.keyLength(head), tag(min, partial.getOffset(head)));
+            }
+        }
+
+        // A page which isn't full was the last one
+        private boolean canFetch(int archive) {
+            return partials[archive].size() == Wiki.QUERY_LIMIT && nexts[archive].isSet();
+        }
+
+        private int compare(SearchResults a, int i, SearchResults b, int j) {
+            char[] aChars = a.keyChars();
+            char[] bChars = b.keyChars();
+            int aStart = a.keyStart(i);
+            int bStart = b.keyStart(j);
+            int aLength = a.keyLength(i);
+            int bLength = b.keyLength(j);
+
+            for (int k = 0; k < Math.min(aLength, bLength); k++) {
+                int cmp = aChars[aStart + k] - bChars[bStart + k];
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(aLength, bLength);
+        }
+    }
+}
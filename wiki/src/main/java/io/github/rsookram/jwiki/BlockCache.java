@@ -0,0 +1,109 @@
+package io.github.rsookram.jwiki;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * An LRU cache of decoded {@link IndexBlock}s, keyed by their row in the
+ * first level index, which is bounded by the memory used by the blocks.
+ * Browsing by following links tends to hit the same few blocks over and over.
+ */
+public class BlockCache {
+
+    private final LinkedHashMap<Integer, IndexBlock> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long maxBytes;
+    private long size;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the block in the given slot, decoding it with decoder if it
+     * isn't cached. Decoding happens outside of the lock, so two threads may
+     * decode the same block at once, but only one of the results is kept.
+     */
+    IndexBlock get(int slot, IntFunction<IndexBlock> decoder) {
+        synchronized (this) {
+            IndexBlock block = blocks.get(slot);
+            if (block != null) {
+                hitCount++;
+                return block;
+            }
+            missCount++;
+        }
+
+        IndexBlock block = decoder.apply(slot);
+
+        synchronized (this) {
+            IndexBlock previous = blocks.put(slot, block);
+            size += block.sizeInBytes();
+            if (previous != null) {
+                size -= previous.sizeInBytes();
+            }
+
+            trimToSize(maxBytes);
+        }
+
+        return block;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Evicts the least recently used blocks until at most maxBytes are held.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Integer, IndexBlock>> it = blocks.entrySet().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            size -= it.next().getValue().sizeInBytes();
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    public void evictAll() {
+        trimToSize(-1);
+    }
+
+    public synchronized long maxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BlockCache{" +
+                "size=" + size +
+                ", maxBytes=" + maxBytes +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                '}';
+    }
+}
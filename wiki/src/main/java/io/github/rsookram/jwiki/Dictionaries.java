@@ -0,0 +1,156 @@
+package io.github.rsookram.jwiki;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.Adler32;
+
+/**
+ * Preset deflate dictionaries which entries can be compressed with, so that
+ * short articles don't start from an empty window. An entry which uses one
+ * has the FDICT flag set in its zlib header, along with the Adler-32 of the
+ * dictionary, which is how it's found here.
+ * <p>
+ * They're stored in an optional section between the entries and the second
+ * level index:
+ * <ul>
+ *     <li>The dictionaries, back to back</li>
+ *     <li>u32[dictionaries] length of each dictionary</li>
+ *     <li>u32 number of dictionaries</li>
+ * </ul>
+ * The section is found with a trailer at the very end of the file, after
+ * the size of the first level index:
+ * <ul>
+ *     <li>u64 offset of the section, u32 size of the section</li>
+ *     <li>u32 version</li>
+ *     <li>u32 magic</li>
+ * </ul>
+ * A file without dictionaries ends with the size of the first level index
+ * instead, which is 2 more than a multiple of 12, so the last 2 bytes of the
+ * magic (0x4A57) can't be mistaken for one.
+ */
+final class Dictionaries {
+
+    static final int MAGIC = 0x4A574458; // JWDX
+    static final int VERSION = 1;
+
+    // offset, size, version, magic
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES * 3;
+
+    static final Dictionaries NONE = new Dictionaries(new int[0], new byte[0][], -1);
+
+    private final int[] ids;
+    private final byte[][] dictionaries;
+
+    // Where the section starts in the file, or -1 if there isn't one
+    private final long offset;
+
+    private Dictionaries(int[] ids, byte[][] dictionaries, long offset) {
+        this.ids = ids;
+        this.dictionaries = dictionaries;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the dictionary with the given Adler-32, or null.
+     */
+    byte[] get(int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return dictionaries[i];
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the offset of the section in the file, which is where the
+     * entries end, or -1 if there isn't one.
+     */
+    long offset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of bytes at the end of the file which come after
+     * the first level index.
+     */
+    int trailerSize() {
+        return offset < 0 ? 0 : TRAILER_SIZE;
+    }
+
+    /**
+     * Reads the section located by the trailer at the end of the file, or
+     * returns {@link #NONE} if the file doesn't have one.
+     */
+    static Dictionaries read(FileChannel channel) throws IOException {
+        long length = channel.size();
+        if (length < TRAILER_SIZE) {
+            return NONE;
+        }
+
+        ByteBuffer trailer = read(channel, length - TRAILER_SIZE, TRAILER_SIZE);
+        long offset = trailer.getLong();
+        int size = trailer.getInt();
+        int version = trailer.getInt();
+        int magic = trailer.getInt();
+        if (magic != MAGIC) {
+            return NONE;
+        }
+        if (version != VERSION) {
+            throw new IOException("unsupported dictionaries version " + version);
+        }
+        if (offset < 0 || size < Integer.BYTES || offset > length - TRAILER_SIZE - size) {
+            throw new IOException("invalid dictionaries section at " + offset + " of size " + size);
+        }
+
+        ByteBuffer section = read(channel, offset, size);
+        int count = section.getInt(size - Integer.BYTES);
+        if (count < 0 || count > (size - Integer.BYTES) / Integer.BYTES) {
+            throw new IOException("invalid number of dictionaries " + count);
+        }
+        int lengthsStart = size - Integer.BYTES - count * Integer.BYTES;
+
+        int[] ids = new int[count];
+        byte[][] dictionaries = new byte[count][];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int dictionaryLength = section.getInt(lengthsStart + i * Integer.BYTES);
+            if (dictionaryLength < 0 || dictionaryLength > lengthsStart - position) {
+                throw new IOException("invalid dictionary length " + dictionaryLength);
+            }
+
+            dictionaries[i] = new byte[dictionaryLength];
+            section.position(position);
+            section.get(dictionaries[i]);
+            position += dictionaryLength;
+
+            ids[i] = adler32(dictionaries[i]);
+        }
+
+        return new Dictionaries(ids, dictionaries, offset);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static int adler32(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return (int) adler.getValue();
+    }
+}
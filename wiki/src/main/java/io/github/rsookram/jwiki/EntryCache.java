@@ -0,0 +1,109 @@
+package io.github.rsookram.jwiki;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An LRU cache of compressed entries, keyed by their offset, which is bounded
+ * by the total number of bytes held. Going back and forth between a few pages
+ * is served from here without touching storage.
+ */
+public class EntryCache {
+
+    private final LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+
+    private long size;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public EntryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Whether an entry of the given size is worth caching. Large entries
+     * would push out many small ones, so they're streamed instead.
+     */
+    public boolean accepts(int entrySize) {
+        return entrySize <= maxBytes / 8;
+    }
+
+    public synchronized byte[] get(long offset) {
+        byte[] entry = entries.get(offset);
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Whether the entry at offset is cached. Unlike {@link #get(long)}, this
+     * doesn't count as a use of the entry.
+     */
+    public synchronized boolean contains(long offset) {
+        return entries.containsKey(offset);
+    }
+
+    public synchronized void put(long offset, byte[] entry) {
+        byte[] previous = entries.put(offset, entry);
+        size += entry.length;
+        if (previous != null) {
+            size -= previous.length;
+        }
+
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Evicts the least recently used entries until at most maxBytes are held.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Long, byte[]>> it = entries.entrySet().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            size -= it.next().getValue().length;
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    public void evictAll() {
+        trimToSize(-1);
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EntryCache{" +
+                "size=" + size +
+                ", maxBytes=" + maxBytes +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                '}';
+    }
+}
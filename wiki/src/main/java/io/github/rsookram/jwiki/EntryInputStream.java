@@ -0,0 +1,107 @@
+package io.github.rsookram.jwiki;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates an entry with a pooled Inflater, setting the preset dictionary it
+ * was compressed with (if any). The Inflater goes back to the pool when this
+ * is closed.
+ */
+class EntryInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 1024 * 16;
+
+    private final InflaterPool pool;
+    private final Dictionaries dictionaries;
+
+    // Null when the whole entry was given up front
+    private final InputStream in;
+    private final byte[] buffer;
+
+    private Inflater inflater;
+
+    /**
+     * Inflates an entry which is already in memory.
+     */
+    EntryInputStream(byte[] entry, InflaterPool pool, Dictionaries dictionaries) {
+        this.pool = pool;
+        this.dictionaries = dictionaries;
+        this.in = null;
+        this.buffer = null;
+        this.inflater = pool.acquire();
+        inflater.setInput(entry);
+    }
+
+    /**
+     * Inflates an entry which is read from in as needed.
+     */
+    EntryInputStream(InputStream in, InflaterPool pool, Dictionaries dictionaries) {
+        this.pool = pool;
+        this.dictionaries = dictionaries;
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.inflater = pool.acquire();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (inflater == null) {
+            throw new IOException("stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        try {
+            while (true) {
+                int n = inflater.inflate(b, off, len);
+                if (n > 0) {
+                    return n;
+                }
+
+                if (inflater.finished()) {
+                    return -1;
+                } else if (inflater.needsDictionary()) {
+                    byte[] dictionary = dictionaries.get(inflater.getAdler());
+                    if (dictionary == null) {
+                        throw new ZipException("missing dictionary " + Integer.toHexString(inflater.getAdler()));
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflater.needsInput()) {
+                    int read = in == null ? -1 : in.read(buffer);
+                    if (read < 0) {
+                        throw new EOFException("unexpected end of entry");
+                    }
+                    inflater.setInput(buffer, 0, read);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater == null) {
+            return;
+        }
+
+        pool.release(inflater);
+        inflater = null;
+        if (in != null) {
+            in.close();
+        }
+    }
+}
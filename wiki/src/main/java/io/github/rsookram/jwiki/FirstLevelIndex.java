@@ -0,0 +1,108 @@
+package io.github.rsookram.jwiki;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FirstLevelIndex {
+
+    static final int KEY_LENGTH = 4;
+
+    private final char[] keyChars;
+    private final int[] offsets;
+
+    FirstLevelIndex(char[] keyChars, int[] offsets) {
+        this.keyChars = keyChars;
+        this.offsets = offsets;
+    }
+
+    public int getOffset(String s) {
+        int slot = getSlot(s);
+        return slot < 0 ? -1 : offsets[slot];
+    }
+
+    /**
+     * Returns the row of the block which s would be in, or -1 if s is before
+     * the first key.
+     */
+    public int getSlot(String s) {
+        long start = Metrics.FIRST_LEVEL_LOOKUP.begin();
+        try {
+            return findSlot(s);
+        } finally {
+            Metrics.FIRST_LEVEL_LOOKUP.end(start);
+        }
+    }
+
+    private int findSlot(String s) {
+        // Find the first key which is after s. s can only be in the block
+        // which comes before it.
+        int low = 0;
+        int high = offsets.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareTo(mid * KEY_LENGTH, s) > 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        // When low is offsets.length, s is after the last key
+        return low - 1;
+    }
+
+    public int getOffsetAt(int slot) {
+        return offsets[slot];
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    char[] keyChars() {
+        return keyChars;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    private int compareTo(int keyStart, String s) {
+        for (int i = 0; i < Math.min(s.length(), KEY_LENGTH); i++) {
+            int cmp = keyChars[keyStart + i] - s.charAt(i);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return KEY_LENGTH - s.length();
+    }
+
+    public static FirstLevelIndex read(InputStream is, int numEntries, byte[] buf) throws IOException {
+        char[] keyChars = new char[numEntries * KEY_LENGTH];
+        int[] offsets = new int[numEntries];
+
+        for (int i = 0; i < numEntries; i++) {
+            is.readNBytes(buf, 0, KEY_LENGTH * Character.BYTES);
+
+            int offsetIntoKeyChars = i * KEY_LENGTH;
+            for (int j = 0; j < KEY_LENGTH; j++) {
+                char ch = getChar(buf, j * Character.BYTES);
+                keyChars[offsetIntoKeyChars + j] = ch;
+            }
+        }
+
+        for (int i = 0; i < numEntries; i++) {
+            is.readNBytes(buf, 0, Integer.BYTES);
+
+            int offset = (buf[3] << 24) | ((buf[2] & 0xFF) << 16) | ((buf[1] & 0xFF) << 8) | (buf[0] & 0xFF);
+            offsets[i] = offset;
+        }
+
+        return new FirstLevelIndex(keyChars, offsets);
+    }
+
+    private static char getChar(byte[] buf, int offset) {
+        return (char) ((buf[offset + 1]) << 8 | (buf[offset] & 0xFF));
+    }
+}
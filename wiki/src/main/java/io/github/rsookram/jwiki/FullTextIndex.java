@@ -0,0 +1,146 @@
+package io.github.rsookram.jwiki;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Finds articles whose text contains a query, using a bigram inverted index
+ * (see {@link FullTextTokenizer}) over every entry of a wiki. Results are
+ * ranked with BM25.
+ * <p>
+ * Building the index means inflating every entry, which takes a long time
+ * for a large wiki, so it's done in the background by a
+ * {@link FullTextIndexer}, a segment at a time. Each {@link FullTextSegment}
+ * is stored next to the wiki as soon as it's complete, so building can
+ * resume after the app is killed, and searches cover every segment written
+ * so far.
+ */
+public class FullTextIndex {
+
+    private final Wiki wiki;
+
+    // In document order, with no gaps
+    private final List<FullTextSegment> segments = new CopyOnWriteArrayList<>();
+
+    private FullTextIndex(Wiki wiki) {
+        this.wiki = wiki;
+    }
+
+    /**
+     * Opens the segments of the index which have been written so far for
+     * wiki. This doesn't build anything.
+     */
+    public static FullTextIndex open(Wiki wiki) throws IOException {
+        FullTextIndex index = new FullTextIndex(wiki);
+        for (int i = 0; ; i++) {
+            FullTextSegment segment = FullTextSegment.open(wiki, i);
+            if (segment == null || segment.firstDoc != index.getNumIndexedDocs()) {
+                break;
+            }
+            index.segments.add(segment);
+        }
+        return index;
+    }
+
+    Wiki getWiki() {
+        return wiki;
+    }
+
+    int getNumSegments() {
+        return segments.size();
+    }
+
+    void addSegment(FullTextSegment segment) {
+        segments.add(segment);
+    }
+
+    /**
+     * Drops every segment, e.g. because they were built from a different
+     * set of entries.
+     */
+    void clear() {
+        segments.clear();
+    }
+
+    /**
+     * Returns the number of documents (distinct entries) which have been
+     * indexed.
+     */
+    public int getNumIndexedDocs() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).endDoc();
+    }
+
+    /**
+     * Returns the number of documents in the complete index, or -1 if no
+     * segments have been written yet.
+     */
+    int getTotalDocs() {
+        return segments.isEmpty() ? -1 : segments.get(0).totalDocs;
+    }
+
+    public boolean isComplete() {
+        return getNumIndexedDocs() == getTotalDocs();
+    }
+
+    /**
+     * Finds the articles which contain every bigram of the normalized query
+     * (which must be at least 2 chars), and writes the
+     * {@link Wiki#QUERY_LIMIT} best matches to results, best first. Each
+     * result has the first title of its entry.
+     */
+    public void search(String query, SearchResults results) {
+        results.clear();
+
+        int[] terms = FullTextTokenizer.queryTerms(query);
+        if (terms.length == 0) {
+            return;
+        }
+
+        Hits hits = new Hits(Wiki.QUERY_LIMIT);
+        for (FullTextSegment segment : segments) {
+            segment.search(terms, hits);
+        }
+
+        for (int i = 0; i < hits.size; i++) {
+            long location = hits.segments[i].getTitleLocation(hits.docs[i]);
+            String title = wiki.getKey((int) (location >>> 32), (int) location);
+            results.add(title.toCharArray(), 0, title.length(), hits.segments[i].getEntryOffset(hits.docs[i]));
+        }
+    }
+
+    /**
+     * The highest scoring documents offered so far, best first.
+     */
+    static final class Hits {
+
+        final float[] scores;
+        final FullTextSegment[] segments;
+        final int[] docs;
+        int size;
+
+        Hits(int limit) {
+            scores = new float[limit];
+            segments = new FullTextSegment[limit];
+            docs = new int[limit];
+        }
+
+        void offer(float score, FullTextSegment segment, int doc) {
+            if (size == scores.length && score <= scores[size - 1]) {
+                return;
+            }
+
+            int i = Math.min(size, scores.length - 1);
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                segments[i] = segments[i - 1];
+                docs[i] = docs[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            segments[i] = segment;
+            docs[i] = doc;
+            size = Math.min(size + 1, scores.length);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package io.github.rsookram.jwiki;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Builds a {@link FullTextIndex}, resuming after the last segment which was
+ * written. Entries are inflated and tokenized in parallel on the given
+ * executor, in file order so that reads are sequential, and their postings
+ * are collected in memory until there are enough for a segment.
+ * <p>
+ * This is meant to run for a long time in the background, so it can be
+ * throttled: {@link #setDutyCycle(float)} limits the share of time spent
+ * working, and {@link #pause()} stops it between batches, e.g. while a page
+ * is loading. Work is stopped with {@link #stop()} rather than by
+ * interrupting, since interrupting a read on a FileChannel closes it for
+ * every other reader.
+ */
+public class FullTextIndexer {
+
+    // Postings are 8 bytes each in memory, so this bounds the memory used
+    // while building a segment to about 32 MB.
+    private static final int MAX_POSTINGS = 1 << 22;
+
+    // Documents handed to each worker at a time
+    private static final int DOCS_PER_TASK = 16;
+
+    private final FullTextIndex index;
+    private final Wiki wiki;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int maxDocsPerSegment;
+
+    private volatile float dutyCycle = 1;
+    private volatile boolean stopped;
+    private boolean paused;
+
+    /**
+     * @param executor runs the work of inflating and tokenizing entries, on
+     *                 up to parallelism threads at once
+     */
+    public FullTextIndexer(FullTextIndex index, ExecutorService executor, int parallelism) {
+        this(index, executor, parallelism, FullTextSegment.MAX_DOCS);
+    }
+
+    /**
+     * @param maxDocsPerSegment at most {@link FullTextSegment#MAX_DOCS}, and
+     *                          smaller in tests so that an index has several
+     *                          segments
+     */
+    FullTextIndexer(FullTextIndex index, ExecutorService executor, int parallelism, int maxDocsPerSegment) {
+        this.index = index;
+        this.wiki = index.getWiki();
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxDocsPerSegment = maxDocsPerSegment;
+    }
+
+    /**
+     * Limits the share of time spent indexing to dutyCycle, in (0, 1], by
+     * sleeping between batches.
+     */
+    public void setDutyCycle(float dutyCycle) {
+        if (dutyCycle <= 0 || dutyCycle > 1) {
+            throw new IllegalArgumentException("invalid duty cycle " + dutyCycle);
+        }
+        this.dutyCycle = dutyCycle;
+    }
+
+    /**
+     * Stops indexing after the current batch until {@link #resume()} is
+     * called.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Makes {@link #run()} return after the current batch. Everything up to
+     * the last segment written is kept.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Indexes every entry which isn't in the index yet. Returns true once
+     * the index is complete, or false if it was stopped first.
+     */
+    public boolean run() throws IOException {
+        Documents docs = Documents.read(wiki);
+        if (index.getNumSegments() > 0 && index.getTotalDocs() != docs.size()) {
+            // The segments are for a different set of entries
+            index.clear();
+        }
+
+        int segment = index.getNumSegments();
+        int firstDoc = index.getNumIndexedDocs();
+
+        long[] postings = new long[1024];
+        int numPostings = 0;
+        int[] lengths = new int[1024];
+
+        int doc = firstDoc;
+        while (doc < docs.size()) {
+            if (!awaitTurn()) {
+                return false;
+            }
+
+            long start = System.nanoTime();
+
+            int batchEnd = (int) Math.min(docs.size(), Math.min(
+                    doc + (long) DOCS_PER_TASK * parallelism,
+                    firstDoc + (long) maxDocsPerSegment
+            ));
+            int segmentStart = firstDoc;
+            List<Callable<Tokenized>> tasks = new ArrayList<>();
+            for (int i = doc; i < batchEnd; i += DOCS_PER_TASK) {
+                int taskStart = i;
+                int taskEnd = Math.min(i + DOCS_PER_TASK, batchEnd);
+                tasks.add(() -> tokenize(docs, taskStart, taskEnd, segmentStart));
+            }
+
+            List<Tokenized> batch = runAll(tasks);
+            if (batch == null) {
+                return false;
+            }
+
+            for (Tokenized tokenized : batch) {
+                if (numPostings + tokenized.numPostings > postings.length) {
+                    postings = Arrays.copyOf(postings, Math.max(postings.length * 2, numPostings + tokenized.numPostings));
+                }
+                System.arraycopy(tokenized.postings, 0, postings, numPostings, tokenized.numPostings);
+                numPostings += tokenized.numPostings;
+
+                int localStart = tokenized.firstDoc - firstDoc;
+                if (localStart + tokenized.lengths.length > lengths.length) {
+                    lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, localStart + tokenized.lengths.length));
+                }
+                System.arraycopy(tokenized.lengths, 0, lengths, localStart, tokenized.lengths.length);
+            }
+            doc = batchEnd;
+
+            if (numPostings >= MAX_POSTINGS || doc - firstDoc >= maxDocsPerSegment || doc == docs.size()) {
+                Arrays.sort(postings, 0, numPostings);
+                index.addSegment(FullTextSegment.write(
+                        wiki, segment, firstDoc, doc - firstDoc, docs.entryOffsets, docs.titles,
+                        lengths, postings, numPostings
+                ));
+
+                segment++;
+                firstDoc = doc;
+                numPostings = 0;
+                if (postings.length > MAX_POSTINGS) {
+                    postings = new long[1024];
+                }
+            }
+
+            throttle(System.nanoTime() - start);
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs tasks on the executor and returns their results in order, or null
+     * if it was stopped. Unlike {@link ExecutorService#invokeAll}, a task is
+     * never cancelled, since that interrupts it, which would close the
+     * wiki's FileChannel if it's reading. Every task which was submitted is
+     * waited for, even when interrupted.
+     */
+    private List<Tokenized> runAll(List<Callable<Tokenized>> tasks) throws IOException {
+        List<Future<Tokenized>> futures = new ArrayList<>(tasks.size());
+        RejectedExecutionException rejected = null;
+        for (Callable<Tokenized> task : tasks) {
+            try {
+                futures.add(executor.submit(task));
+            } catch (RejectedExecutionException e) {
+                rejected = e;
+                break;
+            }
+        }
+
+        List<Tokenized> results = new ArrayList<>(futures.size());
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<Tokenized> future : futures) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IOException("failed to index " + wiki.getFile(), failure);
+        }
+        if (rejected != null && !stopped) {
+            throw new IOException("executor shut down while indexing " + wiki.getFile(), rejected);
+        }
+        return rejected != null || interrupted ? null : results;
+    }
+
+    /**
+     * Waits while paused. Returns false if stopped.
+     */
+    private synchronized boolean awaitTurn() {
+        while (paused && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !stopped;
+    }
+
+    private synchronized void throttle(long workNanos) {
+        long sleepMillis = (long) (workNanos * (1 - dutyCycle) / dutyCycle / 1_000_000);
+        long deadline = System.currentTimeMillis() + sleepMillis;
+        long remaining = sleepMillis;
+        while (remaining > 0 && !stopped) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Inflates and tokenizes documents [start, end). An entry which can't be
+     * read fails the whole run, rather than being indexed as empty, so that
+     * no segment is written without it.
+     */
+    private Tokenized tokenize(Documents docs, int start, int end, int segmentStart) throws IOException {
+        Tokenized tokenized = new Tokenized(start, end - start);
+        for (int doc = start; doc < end; doc++) {
+            byte[] html;
+            try (InputStream in = wiki.inflate(wiki.readEntryBytes(docs.entryOffsets[doc]))) {
+                html = in.readAllBytes();
+            } catch (IOException e) {
+                throw new IOException("failed to read entry at " + docs.entryOffsets[doc], e);
+            }
+            int[] bigrams = FullTextTokenizer.bigrams(KeyNormalizer.normalize(FullTextTokenizer.textOf(html)));
+
+            tokenized.lengths[doc - start] = bigrams.length;
+
+            Arrays.sort(bigrams);
+            long local = (long) (doc - segmentStart) << 12;
+            for (int i = 0; i < bigrams.length; ) {
+                int j = i + 1;
+                while (j < bigrams.length && bigrams[j] == bigrams[i]) {
+                    j++;
+                }
+
+                int frequency = Math.min(j - i, FullTextSegment.MAX_FREQUENCY);
+                tokenized.add((long) bigrams[i] << 32 | local | frequency);
+                i = j;
+            }
+        }
+        return tokenized;
+    }
+
+    /**
+     * The postings and lengths of a range of documents.
+     */
+    private static final class Tokenized {
+
+        final int firstDoc;
+        final int[] lengths;
+
+        long[] postings = new long[256];
+        int numPostings;
+
+        Tokenized(int firstDoc, int numDocs) {
+            this.firstDoc = firstDoc;
+            this.lengths = new int[numDocs];
+        }
+
+        void add(long posting) {
+            if (numPostings == postings.length) {
+                postings = Arrays.copyOf(postings, postings.length * 2);
+            }
+            postings[numPostings++] = posting;
+        }
+    }
+
+    /**
+     * The documents of the index: the distinct entries of the wiki, in file
+     * order, each with the location of the first title which points at it.
+     */
+    static final class Documents {
+
+        final long[] entryOffsets;
+
+        // (block << 32) | row
+        final long[] titles;
+
+        private Documents(long[] entryOffsets, long[] titles) {
+            this.entryOffsets = entryOffsets;
+            this.titles = titles;
+        }
+
+        int size() {
+            return entryOffsets.length;
+        }
+
+        static Documents read(Wiki wiki) throws IOException {
+            FirstLevelIndex firstLevelIndex = wiki.getFirstLevelIndex();
+
+            // (offset << 24) | ordinal of the title, so that sorting puts
+            // the first title of each entry first
+            long[] keys = new long[1024];
+            int[] blockStarts = new int[firstLevelIndex.size() + 1];
+            int[] numKeys = new int[1];
+            for (int slot = 0; slot < firstLevelIndex.size(); slot++) {
+                blockStarts[slot] = numKeys[0];
+                long[][] holder = {keys};
+                wiki.forEachKeyInBlock(slot, (key, keyLength, entryOffset) -> {
+                    if (numKeys[0] == holder[0].length) {
+                        holder[0] = Arrays.copyOf(holder[0], holder[0].length * 2);
+                    }
+                    holder[0][numKeys[0]] = entryOffset << 24 | numKeys[0];
+                    numKeys[0]++;
+                });
+                keys = holder[0];
+            }
+            blockStarts[firstLevelIndex.size()] = numKeys[0];
+            if (numKeys[0] > 1 << 24) {
+                throw new IOException("too many titles to index " + numKeys[0]);
+            }
+
+            Arrays.sort(keys, 0, numKeys[0]);
+
+            long[] entryOffsets = new long[numKeys[0]];
+            long[] titles = new long[numKeys[0]];
+            int numDocs = 0;
+            for (int i = 0; i < numKeys[0]; i++) {
+                long offset = keys[i] >>> 24;
+                if (numDocs > 0 && entryOffsets[numDocs - 1] == offset) {
+                    continue;
+                }
+
+                int ordinal = (int) (keys[i] & ((1 << 24) - 1));
+                // Blocks are never empty, so their starts are distinct
+                int slot = Arrays.binarySearch(blockStarts, ordinal);
+                if (slot < 0) {
+                    slot = -(slot + 1) - 1;
+                }
+
+                entryOffsets[numDocs] = offset;
+                titles[numDocs] = (long) slot << 32 | (ordinal - blockStarts[slot]);
+                numDocs++;
+            }
+
+            return new Documents(Arrays.copyOf(entryOffsets, numDocs), Arrays.copyOf(titles, numDocs));
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * One part of a {@link FullTextIndex}, covering a contiguous range of its
+ * documents (the distinct entries of the wiki, in file order). Each is
+ * written once, by {@link FullTextIndexer}, and mapped into memory.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u32 first document, u32 number of documents, u32 number of
+ *     documents in the whole index, u32 number of terms, u64 size of the
+ *     postings</li>
+ *     <li>u64[documents] entry offset of each document</li>
+ *     <li>u64[documents] location of each document's title in the second
+ *     level index, as (block << 32) | row</li>
+ *     <li>u32[documents] length of each document, in bigrams</li>
+ *     <li>u32[terms] terms (see {@link FullTextTokenizer}), sorted</li>
+ *     <li>u32[terms] number of documents containing each term</li>
+ *     <li>u32[terms + 1] start of each term's postings</li>
+ *     <li>postings: for each document containing the term, in order, its
+ *     delta from the previous one and the term's frequency in it, as
+ *     varints</li>
+ * </ul>
+ */
+final class FullTextSegment {
+
+    private static final String EXTENSION = ".fulltext.";
+    private static final int MAGIC = 0x4A574654; // JWFT
+    private static final int VERSION = 1;
+
+    private static final int FIELDS_SIZE = Integer.BYTES * 4 + Long.BYTES;
+
+    // Frequencies are capped so that they can be packed with the document
+    static final int MAX_FREQUENCY = (1 << 12) - 1;
+    static final int MAX_DOCS = 1 << 20;
+
+    // The usual BM25 parameters
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    final int firstDoc;
+    final int numDocs;
+    final int totalDocs;
+
+    private final MappedByteBuffer buffer;
+    private final int numTerms;
+
+    private final int entryOffsetsOffset;
+    private final int titlesOffset;
+    private final int lengthsOffset;
+    private final int termsOffset;
+    private final int frequenciesOffset;
+    private final int postingStartsOffset;
+    private final int postingsOffset;
+
+    private final float averageLength;
+
+    private FullTextSegment(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+
+        int position = Sidecar.HEADER_SIZE;
+        firstDoc = buffer.getInt(position);
+        numDocs = buffer.getInt(position + 4);
+        totalDocs = buffer.getInt(position + 8);
+        numTerms = buffer.getInt(position + 12);
+
+        entryOffsetsOffset = position + FIELDS_SIZE;
+        titlesOffset = entryOffsetsOffset + numDocs * Long.BYTES;
+        lengthsOffset = titlesOffset + numDocs * Long.BYTES;
+        termsOffset = lengthsOffset + numDocs * Integer.BYTES;
+        frequenciesOffset = termsOffset + numTerms * Integer.BYTES;
+        postingStartsOffset = frequenciesOffset + numTerms * Integer.BYTES;
+        postingsOffset = postingStartsOffset + (numTerms + 1) * Integer.BYTES;
+
+        long totalLength = 0;
+        for (int i = 0; i < numDocs; i++) {
+            totalLength += buffer.getInt(lengthsOffset + i * Integer.BYTES);
+        }
+        averageLength = Math.max(totalLength / (float) Math.max(numDocs, 1), 1);
+    }
+
+    static File fileFor(Wiki wiki, int segment) {
+        return Sidecar.fileFor(wiki, EXTENSION + segment);
+    }
+
+    /**
+     * Opens the given segment of wiki's index, or returns null if it hasn't
+     * been written (for the current version of the wiki).
+     */
+    static FullTextSegment open(Wiki wiki, int segment) throws IOException {
+        MappedByteBuffer buffer = Sidecar.map(fileFor(wiki, segment), wiki.getFile(), MAGIC, VERSION);
+        return buffer != null ? new FullTextSegment(buffer) : null;
+    }
+
+    int endDoc() {
+        return firstDoc + numDocs;
+    }
+
+    long getEntryOffset(int doc) {
+        return buffer.getLong(entryOffsetsOffset + doc * Long.BYTES);
+    }
+
+    long getTitleLocation(int doc) {
+        return buffer.getLong(titlesOffset + doc * Long.BYTES);
+    }
+
+    /**
+     * Scores the documents which contain all of the given (distinct) terms
+     * with BM25, and offers them to hits.
+     */
+    void search(int[] terms, FullTextIndex.Hits hits) {
+        // The postings for each term, as (size << 32) | index
+        long[] lists = new long[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            int index = findTerm(terms[i]);
+            if (index < 0) {
+                return;
+            }
+
+            int size = postingStart(index + 1) - postingStart(index);
+            lists[i] = (long) size << 32 | index;
+        }
+
+        // Start with the shortest list so that there are as few candidates as
+        // possible.
+        Arrays.sort(lists);
+
+        int first = (int) lists[0];
+        int[] candidates = new int[buffer.getInt(frequenciesOffset + first * Integer.BYTES)];
+        float[] scores = new float[candidates.length];
+        int numCandidates = 0;
+
+        int position = postingsOffset + postingStart(first);
+        int limit = postingsOffset + postingStart(first + 1);
+        float idf = idf(first);
+        int doc = -1;
+        while (position < limit) {
+            long delta = readVarint(position);
+            position += (int) (delta >>> 32);
+            doc += (int) delta;
+
+            long frequency = readVarint(position);
+            position += (int) (frequency >>> 32);
+
+            candidates[numCandidates] = doc;
+            scores[numCandidates] = score(idf, (int) frequency, doc);
+            numCandidates++;
+        }
+
+        for (int i = 1; i < lists.length && numCandidates > 0; i++) {
+            numCandidates = intersect(candidates, scores, numCandidates, (int) lists[i]);
+        }
+
+        for (int i = 0; i < numCandidates; i++) {
+            hits.offer(scores[i], this, candidates[i]);
+        }
+    }
+
+    /**
+     * Keeps the candidates which also contain the term at index, in place,
+     * adding its score to theirs. Returns the new number of candidates.
+     */
+    private int intersect(int[] candidates, float[] scores, int numCandidates, int index) {
+        int position = postingsOffset + postingStart(index);
+        int limit = postingsOffset + postingStart(index + 1);
+        float idf = idf(index);
+
+        int kept = 0;
+        int i = 0;
+        int doc = -1;
+        while (i < numCandidates && position < limit) {
+            long delta = readVarint(position);
+            position += (int) (delta >>> 32);
+            doc += (int) delta;
+
+            long frequency = readVarint(position);
+            position += (int) (frequency >>> 32);
+
+            while (i < numCandidates && candidates[i] < doc) {
+                i++;
+            }
+            if (i < numCandidates && candidates[i] == doc) {
+                candidates[kept] = doc;
+                scores[kept] = scores[i] + score(idf, (int) frequency, doc);
+                kept++;
+                i++;
+            }
+        }
+
+        return kept;
+    }
+
+    private float idf(int index) {
+        int frequency = buffer.getInt(frequenciesOffset + index * Integer.BYTES);
+        return (float) Math.log(1 + (numDocs - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    private float score(float idf, int frequency, int doc) {
+        int length = buffer.getInt(lengthsOffset + doc * Integer.BYTES);
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private int findTerm(int term) {
+        int low = 0;
+        int high = numTerms - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = buffer.getInt(termsOffset + mid * Integer.BYTES);
+            if (value < term) {
+                low = mid + 1;
+            } else if (value > term) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private int postingStart(int index) {
+        return buffer.getInt(postingStartsOffset + index * Integer.BYTES);
+    }
+
+    /**
+     * Returns (number of bytes read << 32) | value.
+     */
+    private long readVarint(int position) {
+        int value = 0;
+        int shift = 0;
+        int start = position;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return (long) (position - start) << 32 | (value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a segment for documents [firstDoc, firstDoc + numDocs) of wiki's
+     * index, and opens it.
+     *
+     * @param entryOffsets the entry offset of every document in the index
+     * @param titles the title location of every document in the index
+     * @param lengths the length of each document in this segment
+     * @param postings numPostings of (term << 32) | (document in this segment
+     *                 << 12) | frequency, sorted
+     */
+    static FullTextSegment write(
+            Wiki wiki,
+            int segment,
+            int firstDoc,
+            int numDocs,
+            long[] entryOffsets,
+            long[] titles,
+            int[] lengths,
+            long[] postings,
+            int numPostings
+    ) throws IOException {
+        // Size everything up front so that each section can be written in a
+        // single pass
+        int numTerms = 0;
+        long postingsSize = 0;
+        int previousDoc = -1;
+        for (int i = 0; i < numPostings; i++) {
+            int term = (int) (postings[i] >>> 32);
+            if (i == 0 || term != (int) (postings[i - 1] >>> 32)) {
+                numTerms++;
+                previousDoc = -1;
+            }
+
+            int doc = (int) postings[i] >>> 12;
+            postingsSize += varintSize(doc - previousDoc) + varintSize((int) postings[i] & MAX_FREQUENCY);
+            previousDoc = doc;
+        }
+        if (postingsSize > Integer.MAX_VALUE / 2) {
+            throw new IOException("segment is too large " + postingsSize);
+        }
+
+        File sidecar = fileFor(wiki, segment);
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+
+            long position = Sidecar.HEADER_SIZE + FIELDS_SIZE;
+            SectionWriter offsetWriter = new SectionWriter(channel, position);
+            position += (long) numDocs * Long.BYTES;
+            SectionWriter titleWriter = new SectionWriter(channel, position);
+            position += (long) numDocs * Long.BYTES;
+            SectionWriter lengthWriter = new SectionWriter(channel, position);
+            position += (long) numDocs * Integer.BYTES;
+            SectionWriter termWriter = new SectionWriter(channel, position);
+            position += (long) numTerms * Integer.BYTES;
+            SectionWriter frequencyWriter = new SectionWriter(channel, position);
+            position += (long) numTerms * Integer.BYTES;
+            SectionWriter startWriter = new SectionWriter(channel, position);
+            position += (numTerms + 1L) * Integer.BYTES;
+            SectionWriter postingWriter = new SectionWriter(channel, position);
+
+            for (int i = 0; i < numDocs; i++) {
+                offsetWriter.putLong(entryOffsets[firstDoc + i]);
+                titleWriter.putLong(titles[firstDoc + i]);
+                lengthWriter.putInt(lengths[i]);
+            }
+
+            int start = 0;
+            int documentFrequency = 0;
+            previousDoc = -1;
+            for (int i = 0; i < numPostings; i++) {
+                int term = (int) (postings[i] >>> 32);
+                if (i == 0 || term != (int) (postings[i - 1] >>> 32)) {
+                    if (i > 0) {
+                        frequencyWriter.putInt(documentFrequency);
+                    }
+                    termWriter.putInt(term);
+                    startWriter.putInt(start);
+                    documentFrequency = 0;
+                    previousDoc = -1;
+                }
+
+                int doc = (int) postings[i] >>> 12;
+                start += putVarint(postingWriter, doc - previousDoc);
+                start += putVarint(postingWriter, (int) postings[i] & MAX_FREQUENCY);
+                documentFrequency++;
+                previousDoc = doc;
+            }
+            if (numPostings > 0) {
+                frequencyWriter.putInt(documentFrequency);
+            }
+            startWriter.putInt(start);
+
+            offsetWriter.flush();
+            titleWriter.flush();
+            lengthWriter.flush();
+            termWriter.flush();
+            frequencyWriter.flush();
+            startWriter.flush();
+            postingWriter.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(Sidecar.HEADER_SIZE + FIELDS_SIZE);
+            Sidecar.putHeader(header, wiki.getFile(), MAGIC, VERSION);
+            header.putInt(firstDoc).putInt(numDocs).putInt(entryOffsets.length).putInt(numTerms).putLong(postingsSize);
+            header.flip();
+            Sidecar.writeFully(channel, header, 0);
+
+            channel.force(false);
+        }
+
+        Sidecar.commit(sidecar);
+
+        FullTextSegment written = open(wiki, segment);
+        if (written == null) {
+            throw new IOException("failed to write " + sidecar);
+        }
+        return written;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int putVarint(SectionWriter writer, int value) throws IOException {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            writer.putByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+            size++;
+        }
+        writer.putByte(value);
+        return size;
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.rsookram.jwiki;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits text into the terms of a {@link FullTextIndex}: character bigrams
+ * ((first char << 16) | second char) of the {@link KeyNormalizer normalized}
+ * text, within runs of letters and digits. Bigrams work for Japanese, which
+ * isn't written with spaces between words, without needing a dictionary, and
+ * work the same way for anything else.
+ */
+final class FullTextTokenizer {
+
+    private FullTextTokenizer() {
+    }
+
+    /**
+     * Returns the text of an article, without markup. Tags (along with
+     * scripts and styles) are dropped and character references become
+     * spaces, which is all that matters for indexing.
+     */
+    static String textOf(byte[] html) {
+        String s = new String(html, StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(s.length() / 2);
+
+        int i = 0;
+        while (i < s.length()) {
+            char ch = s.charAt(i);
+            if (ch == '<') {
+                int end;
+                if (s.startsWith("<script", i)) {
+                    end = s.indexOf("</script>", i);
+                } else if (s.startsWith("<style", i)) {
+                    end = s.indexOf("</style>", i);
+                } else {
+                    end = i;
+                }
+                end = end < 0 ? -1 : s.indexOf('>', end);
+                if (end < 0) {
+                    break;
+                }
+
+                sb.append(' ');
+                i = end + 1;
+            } else if (ch == '&') {
+                int end = s.indexOf(';', i);
+                sb.append(' ');
+                i = end < 0 ? s.length() : end + 1;
+            } else {
+                sb.append(ch);
+                i++;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the bigrams of the normalized text, in order, including
+     * repeats.
+     */
+    static int[] bigrams(String normalized) {
+        int[] bigrams = new int[Math.max(normalized.length() - 1, 0)];
+        int n = 0;
+        for (int i = 1; i < normalized.length(); i++) {
+            char first = normalized.charAt(i - 1);
+            char second = normalized.charAt(i);
+            if (Character.isLetterOrDigit(first) && Character.isLetterOrDigit(second)) {
+                bigrams[n++] = first << 16 | second;
+            }
+        }
+        return Arrays.copyOf(bigrams, n);
+    }
+
+    /**
+     * Returns the distinct bigrams of a query, sorted. Queries must match
+     * all of them.
+     */
+    static int[] queryTerms(String query) {
+        int[] bigrams = bigrams(KeyNormalizer.normalize(query));
+        Arrays.sort(bigrams);
+
+        int n = 0;
+        for (int i = 0; i < bigrams.length; i++) {
+            if (i == 0 || bigrams[i] != bigrams[i - 1]) {
+                bigrams[n++] = bigrams[i];
+            }
+        }
+        return Arrays.copyOf(bigrams, n);
+    }
+}
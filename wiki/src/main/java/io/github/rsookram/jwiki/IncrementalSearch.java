@@ -0,0 +1,94 @@
+package io.github.rsookram.jwiki;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Answers a sequence of queries typed one character at a time. When a query
+ * extends the previous one, the scan resumes from the previous query's first
+ * match (or, when all of the previous matches were found, they're just
+ * filtered). When characters are deleted, results are served from the stack
+ * of previous queries.
+ * <p>
+ * Steps are recycled once they fall off the stack, so after warming up, a
+ * query doesn't allocate.
+ * <p>
+ * Each query also sets a cursor for reading the page of results after the
+ * ones returned, with {@link Wiki#queryNext(String, Wiki.Cursor, SearchResults)}.
+ * <p>
+ * Not thread-safe. It's meant to be used from a single search thread.
+ */
+class IncrementalSearch {
+
+    private static final int MAX_HISTORY = 16;
+
+    private final Wiki wiki;
+
+    // Most recent query first. Each query is a prefix of the one before it.
+    private final Deque<Step> history = new ArrayDeque<>(MAX_HISTORY);
+    private final Deque<Step> free = new ArrayDeque<>(MAX_HISTORY);
+
+    IncrementalSearch(Wiki wiki) {
+        this.wiki = wiki;
+    }
+
+    void query(String prefix, SearchResults out, Wiki.Cursor next) {
+        while (!history.isEmpty() && !prefix.startsWith(history.peekFirst().prefix)) {
+            free.addFirst(history.removeFirst());
+        }
+
+        Step previous = history.peekFirst();
+        if (previous != null && previous.prefix.equals(prefix)) {
+            out.copyFrom(previous.results);
+            next.copyFrom(previous.next);
+            return;
+        }
+
+        Step step = obtainStep();
+        step.prefix = prefix;
+
+        if (previous == null || !previous.cursor.isSet()) {
+            step.cursor.reset();
+            wiki.query(prefix, step.cursor, step.next, step.results);
+        } else if (previous.results.size() < Wiki.QUERY_LIMIT) {
+            // Every match of prefix is also a match of the previous query
+            step.cursor.copyFrom(previous.cursor);
+            step.next.reset();
+            step.results.clear();
+            for (int i = 0; i < previous.results.size(); i++) {
+                if (previous.results.startsWith(i, prefix)) {
+                    step.results.add(previous.results, i);
+                }
+            }
+        } else {
+            step.cursor.copyFrom(previous.cursor);
+            wiki.query(prefix, step.cursor, step.next, step.results);
+        }
+
+        history.addFirst(step);
+
+        out.copyFrom(step.results);
+        next.copyFrom(step.next);
+    }
+
+    private Step obtainStep() {
+        if (!free.isEmpty()) {
+            return free.removeFirst();
+        }
+        if (history.size() == MAX_HISTORY) {
+            return history.removeLast();
+        }
+        return new Step();
+    }
+
+    private static class Step {
+        String prefix;
+        final SearchResults results = new SearchResults();
+
+        // Points at the first key >= prefix
+        final Wiki.Cursor cursor = new Wiki.Cursor();
+
+        // Points after the last result
+        final Wiki.Cursor next = new Wiki.Cursor();
+    }
+}
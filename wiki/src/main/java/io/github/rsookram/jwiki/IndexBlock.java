@@ -0,0 +1,87 @@
+package io.github.rsookram.jwiki;
+
+/**
+ * The decoded keys of one block of the second level index (the rows between
+ * two first level index entries). Keys are stored back to back in a single
+ * char[] so that a block only takes a few objects, no matter how many rows it
+ * has.
+ */
+class IndexBlock {
+
+    private final char[] keyChars;
+
+    // Key i is keyChars[keyStarts[i], keyStarts[i + 1])
+    private final int[] keyStarts;
+    private final long[] entryOffsets;
+
+    IndexBlock(char[] keyChars, int[] keyStarts, long[] entryOffsets) {
+        this.keyChars = keyChars;
+        this.keyStarts = keyStarts;
+        this.entryOffsets = entryOffsets;
+    }
+
+    int size() {
+        return entryOffsets.length;
+    }
+
+    long getEntryOffset(int i) {
+        return entryOffsets[i];
+    }
+
+    String getKey(int i) {
+        return new String(keyChars, keyStarts[i], keyStarts[i + 1] - keyStarts[i]);
+    }
+
+    /**
+     * Same contract as {@link java.util.Arrays#binarySearch(long[], long)}:
+     * returns the index of the key if it's present, otherwise
+     * (-(insertion point) - 1).
+     */
+    int binarySearch(String key) {
+        return binarySearch(key, 0);
+    }
+
+    /**
+     * Like {@link #binarySearch(String)}, but only searches keys from
+     * fromIndex on, for looking up keys in sorted order.
+     */
+    int binarySearch(String key, int fromIndex) {
+        int low = fromIndex;
+        int high = entryOffsets.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTo(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private int compareTo(int i, String s) {
+        int start = keyStarts[i];
+        int length = keyStarts[i + 1] - start;
+        for (int j = 0; j < Math.min(length, s.length()); j++) {
+            int cmp = keyChars[start + j] - s.charAt(j);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return Integer.compare(length, s.length());
+    }
+
+    /**
+     * An estimate of how much memory is used by this block.
+     */
+    long sizeInBytes() {
+        return (long) keyChars.length * Character.BYTES +
+                (long) keyStarts.length * Integer.BYTES +
+                (long) entryOffsets.length * Long.BYTES;
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * What {@link Wiki} needs from the end of a {@code .wiki} file to open it: the
+ * location of the second level index, and the first level index. It's saved
+ * next to the wiki so that later opens can load it with a few bulk copies
+ * instead of reading and decoding the trailer.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u64 offset of the second level index, u32 length of the second
+ *     level index, u32 number of first level index entries</li>
+ *     <li>u32[entries] first level index offsets</li>
+ *     <li>u16[entries * 4] first level index keys</li>
+ * </ul>
+ */
+final class IndexSnapshot {
+
+    private static final String EXTENSION = ".snapshot";
+    private static final int MAGIC = 0x4A57534E; // JWSN
+    private static final int VERSION = 1;
+
+    final long secondLevelIndexOffset;
+    final int secondLevelIndexLength;
+    final FirstLevelIndex firstLevelIndex;
+
+    IndexSnapshot(long secondLevelIndexOffset, int secondLevelIndexLength, FirstLevelIndex firstLevelIndex) {
+        this.secondLevelIndexOffset = secondLevelIndexOffset;
+        this.secondLevelIndexLength = secondLevelIndexLength;
+        this.firstLevelIndex = firstLevelIndex;
+    }
+
+    /**
+     * Loads the snapshot saved for the given wiki file, or returns null if
+     * there isn't an up to date one.
+     */
+    static IndexSnapshot load(File wiki) throws IOException {
+        MappedByteBuffer buffer = Sidecar.map(Sidecar.fileFor(wiki, EXTENSION), wiki, MAGIC, VERSION);
+        if (buffer == null) {
+            return null;
+        }
+
+        long secondLevelIndexOffset = buffer.getLong();
+        int secondLevelIndexLength = buffer.getInt();
+        int numEntries = buffer.getInt();
+        if (numEntries < 0 || buffer.remaining() != numEntries * (Integer.BYTES + FirstLevelIndex.KEY_LENGTH * Character.BYTES)) {
+            return null;
+        }
+
+        int[] offsets = new int[numEntries];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + numEntries * Integer.BYTES);
+
+        char[] keyChars = new char[numEntries * FirstLevelIndex.KEY_LENGTH];
+        buffer.asCharBuffer().get(keyChars);
+
+        return new IndexSnapshot(secondLevelIndexOffset, secondLevelIndexLength, new FirstLevelIndex(keyChars, offsets));
+    }
+
+    /**
+     * Saves this as the snapshot for the given wiki file.
+     */
+    void save(File wiki) throws IOException {
+        File sidecar = Sidecar.fileFor(wiki, EXTENSION);
+
+        char[] keyChars = firstLevelIndex.keyChars();
+        int[] offsets = firstLevelIndex.offsets();
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+                Sidecar.HEADER_SIZE + Long.BYTES + Integer.BYTES * 2 +
+                        offsets.length * Integer.BYTES + keyChars.length * Character.BYTES
+        );
+        Sidecar.putHeader(buffer, wiki, MAGIC, VERSION);
+        buffer.putLong(secondLevelIndexOffset)
+                .putInt(secondLevelIndexLength)
+                .putInt(offsets.length);
+        buffer.asIntBuffer().put(offsets);
+        buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+        buffer.asCharBuffer().put(keyChars);
+        buffer.position(buffer.limit());
+        buffer.flip();
+
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+            Sidecar.writeFully(channel, buffer, 0);
+            channel.force(false);
+        }
+        Sidecar.commit(sidecar);
+    }
+}
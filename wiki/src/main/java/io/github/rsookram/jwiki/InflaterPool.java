@@ -0,0 +1,31 @@
+package io.github.rsookram.jwiki;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Reuses Inflaters between entries. Each one holds a window and other native
+ * state which is relatively expensive to allocate and only freed once it's
+ * ended (or finalized).
+ */
+final class InflaterPool {
+
+    private final BlockingQueue<Inflater> inflaters;
+
+    InflaterPool(int size) {
+        this.inflaters = new ArrayBlockingQueue<>(size);
+    }
+
+    Inflater acquire() {
+        Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    void release(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
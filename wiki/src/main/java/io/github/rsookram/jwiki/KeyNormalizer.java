@@ -0,0 +1,32 @@
+package io.github.rsookram.jwiki;
+
+import java.text.Normalizer;
+
+/**
+ * Folds away differences in how a title can be typed: full-width and
+ * half-width forms (NFKC), katakana and hiragana, and case. e.g. "ﾄｳｷｮｳ",
+ * "トウキョウ" and "とうきょう" are all normalized to "とうきょう".
+ */
+public final class KeyNormalizer {
+
+    private static final char KATAKANA_START = 'ァ';
+    private static final char KATAKANA_END = 'ヶ';
+    private static final int KATAKANA_TO_HIRAGANA = 'ァ' - 'ぁ';
+
+    private KeyNormalizer() {
+    }
+
+    public static String normalize(CharSequence s) {
+        String nfkc = Normalizer.normalize(s, Normalizer.Form.NFKC);
+
+        StringBuilder sb = new StringBuilder(nfkc.length());
+        for (int i = 0; i < nfkc.length(); i++) {
+            char ch = nfkc.charAt(i);
+            if (ch >= KATAKANA_START && ch <= KATAKANA_END) {
+                ch -= KATAKANA_TO_HIRAGANA;
+            }
+            sb.append(Character.toLowerCase(ch));
+        }
+        return sb.toString();
+    }
+}
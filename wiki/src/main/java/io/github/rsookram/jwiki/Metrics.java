@@ -0,0 +1,307 @@
+package io.github.rsookram.jwiki;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters for the operations that reading a wiki is
+ * made up of, so that a slowdown can be attributed to I/O, index decoding or
+ * inflating. Recording is off by default, which leaves a single volatile read
+ * per operation.
+ * <p>
+ * When a {@link Tracer} is set, each timed operation is also a trace section,
+ * e.g. so that it shows up in Perfetto on Android. {@link #report()} formats
+ * everything recorded so far, for logs, tests and benchmarks.
+ */
+public final class Metrics {
+
+    /**
+     * Receives the start and end of each timed operation, on the thread which
+     * ran it.
+     */
+    public interface Tracer {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    public static final Histogram QUERY = new Histogram("Wiki.query", "ns");
+
+    /**
+     * The rows of the second level index read by a query, or the nodes
+     * visited when it's answered by the {@link TitleTrie}.
+     */
+    public static final Histogram ROWS_SCANNED = new Histogram("Wiki.query rows scanned", "rows or nodes");
+
+    public static final Histogram ENTRY_OFFSET = new Histogram("Wiki.getEntryOffset", "ns");
+    public static final Histogram FIRST_LEVEL_LOOKUP = new Histogram("FirstLevelIndex.getSlot", "ns");
+
+    /**
+     * Opening an entry, plus reading it (and inflating it, if it's inflated)
+     * until it's closed. See {@link Histogram#endWhenClosed(long, InputStream)}.
+     */
+    public static final Histogram ENTRY = new Histogram("Wiki.getEntry", "ns");
+
+    /**
+     * Reading an inflated entry to the end, including any reads of its
+     * compressed bytes. See {@link Histogram#timed(InputStream)}.
+     */
+    public static final Histogram INFLATE = new Histogram("inflate", "ns");
+
+    private static final Histogram[] HISTOGRAMS = {
+            QUERY, ROWS_SCANNED, ENTRY_OFFSET, FIRST_LEVEL_LOOKUP, ENTRY, INFLATE,
+    };
+
+    private static final LongAdder bytesRead = new LongAdder();
+
+    private static volatile boolean enabled;
+    private static volatile Tracer tracer;
+
+    // Returned by Histogram.begin when recording is off
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Sets the tracer to send sections to, or null for none. This should be
+     * done before recording is enabled so that sections stay balanced.
+     */
+    public static void setTracer(Tracer tracer) {
+        Metrics.tracer = tracer;
+    }
+
+    /**
+     * Counts bytes read from storage (i.e. excluding cache hits and mapped
+     * index reads).
+     */
+    static void addBytesRead(long n) {
+        if (enabled) {
+            bytesRead.add(n);
+        }
+    }
+
+    public static long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        bytesRead.reset();
+    }
+
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram histogram : HISTOGRAMS) {
+            sb.append(histogram).append('\n');
+        }
+        sb.append("bytes read: ").append(getBytesRead()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Counts values in power of two buckets, which is enough to tell typical
+     * values from outliers without needing to store every value.
+     */
+    public static final class Histogram {
+
+        // Bucket i holds values with i significant bits, i.e. in [2^(i-1), 2^i)
+        private static final int NUM_BUCKETS = Long.SIZE;
+
+        private final String name;
+        private final String unit;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        /**
+         * Starts timing an operation. Pass the result to
+         * {@link #end(long)} once it's done, e.g. in a finally block.
+         */
+        public long begin() {
+            if (!enabled) {
+                return NOT_STARTED;
+            }
+
+            Tracer t = tracer;
+            if (t != null) {
+                t.beginSection(name);
+            }
+            return System.nanoTime();
+        }
+
+        public void end(long start) {
+            if (start == NOT_STARTED) {
+                return;
+            }
+
+            add(System.nanoTime() - start);
+
+            Tracer t = tracer;
+            if (t != null) {
+                t.endSection();
+            }
+        }
+
+        public void record(long value) {
+            if (enabled) {
+                add(value);
+            }
+        }
+
+        private void add(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * Wraps in so that the time spent reading from it, up until it's
+         * closed, is recorded as a single value.
+         */
+        public InputStream timed(InputStream in) {
+            if (!enabled) {
+                return in;
+            }
+
+            return new TimedInputStream(in, 0);
+        }
+
+        /**
+         * Ends the trace section started by {@link #begin()}, like
+         * {@link #end(long)}, but rather than recording the time since start
+         * right away, wraps in so that the time spent reading from it is
+         * added, and records the total once it's closed. This times an
+         * operation which returns a stream which is read later, possibly on
+         * another thread.
+         */
+        public InputStream endWhenClosed(long start, InputStream in) {
+            if (start == NOT_STARTED) {
+                return in;
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            Tracer t = tracer;
+            if (t != null) {
+                t.endSection();
+            }
+
+            return new TimedInputStream(in, elapsed);
+        }
+
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Returns an upper bound for the given percentile (in [0, 100]) of the
+         * recorded values, which is within a factor of 2 of the actual value.
+         */
+        public long percentile(double percentile) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max());
+                }
+            }
+            return max();
+        }
+
+        void reset() {
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            sum.reset();
+            max.set(0);
+        }
+
+        private final class TimedInputStream extends FilterInputStream {
+
+            private long elapsed;
+
+            TimedInputStream(InputStream in, long elapsed) {
+                super(in);
+                this.elapsed = elapsed;
+            }
+
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read();
+                } finally {
+                    elapsed += System.nanoTime() - start;
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read(b, off, len);
+                } finally {
+                    elapsed += System.nanoTime() - start;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                record(elapsed);
+            }
+        }
+
+        @Override
+        public String toString() {
+            long count = count();
+            return name + ": count=" + count +
+                    ", mean=" + (count == 0 ? 0 : sum() / count) +
+                    ", p50<=" + percentile(50) +
+                    ", p90<=" + percentile(90) +
+                    ", p99<=" + percentile(99) +
+                    ", max=" + max() +
+                    " " + unit;
+        }
+    }
+}
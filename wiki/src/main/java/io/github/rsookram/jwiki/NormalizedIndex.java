@@ -0,0 +1,247 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Titles sorted by their {@link KeyNormalizer normalized} form, so that a
+ * normalized prefix search (e.g. finding トウキョウ by typing とうきょう) is a
+ * single binary search and forward scan, like a regular prefix search. It's
+ * built from a pass over the second level index and stored next to the wiki,
+ * where it's mapped into memory. Matches are turned back into titles with the
+ * wiki's {@link TitleTable}.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u32 number of titles, u32 number of normalized chars</li>
+ *     <li>u32[titles + 1] start of each normalized key in the normalized
+ *     chars, in normalized order</li>
+ *     <li>u32[titles] ordinal of the title of each normalized key, in
+ *     normalized order</li>
+ *     <li>u16[normalized chars] normalized chars, in normalized order</li>
+ * </ul>
+ */
+public class NormalizedIndex {
+
+    private static final String EXTENSION = ".normalized";
+    private static final int MAGIC = 0x4A574E4B; // JWNK
+    private static final int VERSION = 2;
+
+    private final MappedByteBuffer buffer;
+
+    private final int numTitles;
+    private final TitleTable titles;
+    private final int startsOffset;
+    private final int ordinalsOffset;
+    private final int charsOffset;
+
+    private NormalizedIndex(MappedByteBuffer buffer, TitleTable titles) {
+        this.buffer = buffer;
+        this.titles = titles;
+
+        int position = Sidecar.HEADER_SIZE;
+        numTitles = buffer.getInt(position);
+
+        startsOffset = position + 8;
+        ordinalsOffset = startsOffset + (numTitles + 1) * Integer.BYTES;
+        charsOffset = ordinalsOffset + numTitles * Integer.BYTES;
+    }
+
+    /**
+     * Opens the index stored next to wiki, building it first if it doesn't
+     * exist or is out of date. Building reads the whole second level index,
+     * so this should be called in the background. titles is the wiki's
+     * {@link TitleTable}.
+     */
+    public static NormalizedIndex openOrBuild(Wiki wiki, TitleTable titles) throws IOException {
+        File sidecar = Sidecar.fileFor(wiki, EXTENSION);
+
+        MappedByteBuffer buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+        if (buffer == null || buffer.getInt(Sidecar.HEADER_SIZE) != titles.size()) {
+            build(wiki, sidecar);
+            buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+            if (buffer == null) {
+                throw new IOException("failed to build " + sidecar);
+            }
+        }
+
+        return new NormalizedIndex(buffer, titles);
+    }
+
+    /**
+     * Finds the titles whose normalized form starts with normalizedPrefix
+     * (which should come from {@link KeyNormalizer#normalize(CharSequence)}),
+     * and writes up to {@link Wiki#QUERY_LIMIT} of them to results.
+     */
+    public void search(String normalizedPrefix, SearchResults results) {
+        results.clear();
+
+        // Find the first normalized key >= normalizedPrefix
+        int low = 0;
+        int high = numTitles;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareTo(mid, normalizedPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        char[] key = new char[Wiki.MAX_KEY_LENGTH];
+        for (int i = low; i < numTitles && results.size() < Wiki.QUERY_LIMIT && startsWith(i, normalizedPrefix); i++) {
+            int ordinal = buffer.getInt(ordinalsOffset + i * Integer.BYTES);
+            int length = titles.getTitle(ordinal, key);
+            results.add(key, 0, length, titles.getEntryOffset(ordinal));
+        }
+    }
+
+    private int compareTo(int i, String s) {
+        int start = buffer.getInt(startsOffset + i * Integer.BYTES);
+        int length = buffer.getInt(startsOffset + (i + 1) * Integer.BYTES) - start;
+
+        for (int j = 0; j < Math.min(length, s.length()); j++) {
+            int cmp = buffer.getChar(charsOffset + (start + j) * Character.BYTES) - s.charAt(j);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return Integer.compare(length, s.length());
+    }
+
+    private boolean startsWith(int i, String prefix) {
+        int start = buffer.getInt(startsOffset + i * Integer.BYTES);
+        int length = buffer.getInt(startsOffset + (i + 1) * Integer.BYTES) - start;
+        if (prefix.length() > length) {
+            return false;
+        }
+
+        for (int j = 0; j < prefix.length(); j++) {
+            if (buffer.getChar(charsOffset + (start + j) * Character.BYTES) != prefix.charAt(j)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void build(Wiki wiki, File sidecar) throws IOException {
+        // Normalized keys by ordinal. NFKC can change the length of a key, so
+        // the arenas grow as needed.
+        int[][] starts = {new int[1024]};
+        char[][] chars = {new char[1024 * 8]};
+        int[] numTitles = new int[1];
+        wiki.forEachKey((key, keyLength, entryOffset) -> {
+            String normalized = KeyNormalizer.normalize(new String(key, 0, keyLength));
+
+            int ordinal = numTitles[0]++;
+            if (ordinal + 1 == starts[0].length) {
+                starts[0] = Arrays.copyOf(starts[0], starts[0].length * 2);
+            }
+            int start = starts[0][ordinal];
+            if (start + normalized.length() > chars[0].length) {
+                chars[0] = Arrays.copyOf(chars[0], Math.max(chars[0].length * 2, start + normalized.length()));
+            }
+            normalized.getChars(0, normalized.length(), chars[0], start);
+            starts[0][ordinal + 1] = start + normalized.length();
+        });
+
+        int[] order = sortedOrdinals(chars[0], starts[0], numTitles[0]);
+        int numNormalizedChars = starts[0][numTitles[0]];
+
+        long startsOffset = Sidecar.HEADER_SIZE + 8;
+        long ordinalsOffset = startsOffset + (numTitles[0] + 1L) * Integer.BYTES;
+        long charsOffset = ordinalsOffset + (long) numTitles[0] * Integer.BYTES;
+
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+
+            SectionWriter sortedStarts = new SectionWriter(channel, startsOffset);
+            SectionWriter ordinals = new SectionWriter(channel, ordinalsOffset);
+            SectionWriter sortedChars = new SectionWriter(channel, charsOffset);
+
+            int position = 0;
+            for (int i : order) {
+                sortedStarts.putInt(position);
+                ordinals.putInt(i);
+                for (int j = starts[0][i]; j < starts[0][i + 1]; j++) {
+                    sortedChars.putChar(chars[0][j]);
+                }
+                position += starts[0][i + 1] - starts[0][i];
+            }
+            sortedStarts.putInt(position);
+
+            sortedStarts.flush();
+            ordinals.flush();
+            sortedChars.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(Sidecar.HEADER_SIZE + 8);
+            Sidecar.putHeader(header, wiki.getFile(), MAGIC, VERSION);
+            header.putInt(numTitles[0]).putInt(numNormalizedChars);
+            header.flip();
+            Sidecar.writeFully(channel, header, 0);
+
+            channel.force(false);
+        }
+
+        Sidecar.commit(sidecar);
+    }
+
+    /**
+     * Sorts the ordinals by normalized key (then by ordinal), with a bottom
+     * up merge sort so that no boxing is needed.
+     */
+    private static int[] sortedOrdinals(char[] chars, int[] starts, int numTitles) {
+        int[] order = new int[numTitles];
+        for (int i = 0; i < numTitles; i++) {
+            order[i] = i;
+        }
+
+        int[] tmp = new int[numTitles];
+        for (int width = 1; width < numTitles; width *= 2) {
+            for (int low = 0; low < numTitles; low += 2 * width) {
+                int mid = Math.min(low + width, numTitles);
+                int high = Math.min(low + 2 * width, numTitles);
+
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    tmp[k++] = compare(chars, starts, order[i], order[j]) <= 0 ? order[i++] : order[j++];
+                }
+                while (i < mid) {
+                    tmp[k++] = order[i++];
+                }
+                while (j < high) {
+                    tmp[k++] = order[j++];
+                }
+            }
+
+            int[] swap = order;
+            order = tmp;
+            tmp = swap;
+        }
+
+        return order;
+    }
+
+    private static int compare(char[] chars, int[] starts, int a, int b) {
+        int aLength = starts[a + 1] - starts[a];
+        int bLength = starts[b + 1] - starts[b];
+        for (int i = 0; i < Math.min(aLength, bLength); i++) {
+            int cmp = chars[starts[a] + i] - chars[starts[b] + i];
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        int cmp = Integer.compare(aLength, bLength);
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+}
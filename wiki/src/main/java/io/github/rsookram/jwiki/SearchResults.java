@@ -0,0 +1,138 @@
+package io.github.rsookram.jwiki;
+
+import java.util.Arrays;
+
+/**
+ * The keys and entry offsets matching a query. Keys are stored back to back
+ * in a single char[], and all of the arrays are reused when an instance is
+ * refilled, so that searching doesn't produce garbage for each result.
+ */
+public class SearchResults {
+
+    private char[] keyChars = new char[Wiki.QUERY_LIMIT * 16];
+
+    // Key i is keyChars[keyStarts[i], keyStarts[i + 1])
+    private int[] keyStarts = new int[Wiki.QUERY_LIMIT + 1];
+    private long[] offsets = new long[Wiki.QUERY_LIMIT];
+
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The array which holds the chars of every key. Use with
+     * {@link #keyStart(int)} and {@link #keyLength(int)}.
+     */
+    public char[] keyChars() {
+        return keyChars;
+    }
+
+    public int keyStart(int i) {
+        return keyStarts[i];
+    }
+
+    public int keyLength(int i) {
+        return keyStarts[i + 1] - keyStarts[i];
+    }
+
+    public long getOffset(int i) {
+        return offsets[i];
+    }
+
+    public int indexOfOffset(long offset) {
+        for (int i = 0; i < size; i++) {
+            if (offsets[i] == offset) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether key i is key[start, start + length).
+     */
+    public boolean keyEquals(int i, char[] key, int start, int length) {
+        return Arrays.equals(keyChars, keyStarts[i], keyStarts[i + 1], key, start, start + length);
+    }
+
+    /**
+     * Returns whether other has the same keys and offsets, in the same order.
+     */
+    public boolean contentEquals(SearchResults other) {
+        if (size != other.size) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (offsets[i] != other.offsets[i] ||
+                    !keyEquals(i, other.keyChars, other.keyStart(i), other.keyLength(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean startsWith(int i, String prefix) {
+        int start = keyStarts[i];
+        if (prefix.length() > keyStarts[i + 1] - start) {
+            return false;
+        }
+
+        for (int j = 0; j < prefix.length(); j++) {
+            if (keyChars[start + j] != prefix.charAt(j)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(char[] key, int keyStart, int keyLength, long offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            keyStarts = Arrays.copyOf(keyStarts, size * 2 + 1);
+        }
+
+        int start = keyStarts[size];
+        if (start + keyLength > keyChars.length) {
+            keyChars = Arrays.copyOf(keyChars, Math.max(keyChars.length * 2, start + keyLength));
+        }
+
+        System.arraycopy(key, keyStart, keyChars, start, keyLength);
+        keyStarts[size + 1] = start + keyLength;
+        offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * Adds result i of other to this.
+     */
+    public void add(SearchResults other, int i) {
+        add(other.keyChars, other.keyStart(i), other.keyLength(i), other.offsets[i]);
+    }
+
+    public void copyFrom(SearchResults other) {
+        clear();
+        for (int i = 0; i < other.size; i++) {
+            add(other, i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SearchResults{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(keyChars, keyStart(i), keyLength(i)).append('=').append(offsets[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.rsookram.jwiki;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffers little endian writes to a region of a file, starting at a given
+ * position. Several of them can fill different sections of the same file at
+ * once, which lets files be written in one pass when the size of each section
+ * is known up front.
+ */
+class SectionWriter implements Flushable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024 * 64).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long position;
+
+    SectionWriter(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    void putByte(int b) throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    void putChar(char ch) throws IOException {
+        ensureRemaining(Character.BYTES);
+        buffer.putChar(ch);
+    }
+
+    void putInt(int i) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(i);
+    }
+
+    void putLong(long l) throws IOException {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(l);
+    }
+
+    void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensureRemaining(1);
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * The position in the file that the next write will go to.
+     */
+    long position() {
+        return position + buffer.position();
+    }
+
+    private void ensureRemaining(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        Sidecar.writeFully(channel, buffer, position);
+        position += buffer.limit();
+        buffer.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for files which are derived from a {@code .wiki} file and stored
+ * next to it, like extra indexes. Each starts with a header which records the
+ * length and modification time of the file it was built from, so that a stale
+ * sidecar is ignored (and rebuilt) after the wiki is replaced.
+ */
+final class Sidecar {
+
+    // magic, version, source length, source modification time
+    static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 2;
+
+    private Sidecar() {
+    }
+
+    static File fileFor(Wiki wiki, String extension) {
+        return fileFor(wiki.getFile(), extension);
+    }
+
+    static File fileFor(File source, String extension) {
+        return new File(source.getPath() + extension);
+    }
+
+    /**
+     * Maps the sidecar for source into memory, positioned after its header.
+     * Returns null if it doesn't exist, or wasn't built from the current
+     * version of source.
+     */
+    static MappedByteBuffer map(File sidecar, File source, int magic, int version) throws IOException {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != magic ||
+                    buffer.getInt() != version ||
+                    buffer.getLong() != source.length() ||
+                    buffer.getLong() != source.lastModified()) {
+                return null;
+            }
+
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes the header for a sidecar of source at the start of buffer.
+     */
+    static void putHeader(ByteBuffer buffer, File source, int magic, int version) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(magic)
+                .putInt(version)
+                .putLong(source.length())
+                .putLong(source.lastModified());
+    }
+
+    /**
+     * Writes all of buffer to channel at position. A single write may write
+     * only part of it.
+     */
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Opens a temporary file to write the sidecar to. Call
+     * {@link #commit(File)} once it's complete so that readers never see a
+     * partially written file.
+     */
+    static RandomAccessFile create(File sidecar) throws IOException {
+        File tmp = tmpFile(sidecar);
+        Files.deleteIfExists(tmp.toPath());
+        return new RandomAccessFile(tmp, "rw");
+    }
+
+    static void commit(File sidecar) throws IOException {
+        Files.move(tmpFile(sidecar).toPath(), sidecar.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static File tmpFile(File sidecar) {
+        return new File(sidecar.getPath() + ".tmp");
+    }
+}
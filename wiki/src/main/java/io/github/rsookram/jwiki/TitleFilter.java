@@ -0,0 +1,145 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A Bloom filter over every title in a wiki, so that looking up a title which
+ * doesn't exist (e.g. a red link) can usually be answered without reading the
+ * index. It may claim to contain a title which isn't in the wiki (about 1% of
+ * the time), but never the reverse. It's built from a pass over the second
+ * level index and stored next to the wiki, where it's mapped into memory.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u32 number of hashes per title</li>
+ *     <li>u32 number of words in the filter, a power of 2</li>
+ *     <li>u64[words] bits of the filter</li>
+ * </ul>
+ */
+public class TitleFilter {
+
+    private static final String EXTENSION = ".bloom";
+    private static final int MAGIC = 0x4A57424C; // JWBL
+    private static final int VERSION = 1;
+
+    // ~1% false positives before rounding the size up to a power of 2
+    private static final int BITS_PER_TITLE = 10;
+    private static final int NUM_HASHES = 7;
+
+    private static final int BITS_OFFSET = Sidecar.HEADER_SIZE + 8;
+
+    private final MappedByteBuffer buffer;
+    private final int numHashes;
+    private final long bitMask;
+
+    private TitleFilter(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        numHashes = buffer.getInt(Sidecar.HEADER_SIZE);
+        int numWords = buffer.getInt(Sidecar.HEADER_SIZE + 4);
+        bitMask = (long) numWords * Long.SIZE - 1;
+    }
+
+    /**
+     * Opens the filter stored next to wiki, building it first if it doesn't
+     * exist or is out of date. Building reads the whole second level index,
+     * so this should be called in the background.
+     */
+    public static TitleFilter openOrBuild(Wiki wiki) throws IOException {
+        File sidecar = Sidecar.fileFor(wiki, EXTENSION);
+
+        MappedByteBuffer buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+        if (buffer == null) {
+            build(wiki, sidecar);
+            buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+            if (buffer == null) {
+                throw new IOException("failed to build " + sidecar);
+            }
+        }
+
+        return new TitleFilter(buffer);
+    }
+
+    /**
+     * Returns false if title definitely isn't in the wiki.
+     */
+    public boolean mightContain(String title) {
+        long hash = hash(title);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            long word = buffer.getLong(BITS_OFFSET + (int) (bit >>> 6) * Long.BYTES);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void build(Wiki wiki, File sidecar) throws IOException {
+        int[] numTitles = new int[1];
+        wiki.forEachKey((key, keyLength, entryOffset) -> numTitles[0]++);
+
+        long minBits = Math.max((long) numTitles[0] * BITS_PER_TITLE, Long.SIZE);
+        int numWords = (int) ((Long.highestOneBit(minBits - 1) << 1) / Long.SIZE);
+        long bitMask = (long) numWords * Long.SIZE - 1;
+
+        long[] words = new long[numWords];
+        wiki.forEachKey((key, keyLength, entryOffset) -> {
+            long hash = hash(CharBuffer.wrap(key, 0, keyLength));
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                long bit = (h1 + i * h2) & bitMask;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        });
+
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+
+            SectionWriter bits = new SectionWriter(channel, BITS_OFFSET);
+            for (long word : words) {
+                bits.putLong(word);
+            }
+            bits.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(BITS_OFFSET);
+            Sidecar.putHeader(header, wiki.getFile(), MAGIC, VERSION);
+            header.putInt(NUM_HASHES).putInt(numWords);
+            header.flip();
+            Sidecar.writeFully(channel, header, 0);
+
+            channel.force(false);
+        }
+
+        Sidecar.commit(sidecar);
+    }
+
+    // FNV-1a over the chars, then mixed so that both halves are usable as
+    // independent hashes. Titles are hashed the same way when building and
+    // when looking them up, whether they're a String or a key in a buffer.
+    private static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    // The finalizer of MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,388 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A character bigram inverted index over titles, for finding titles which
+ * contain a string anywhere (e.g. 大学 in 東京大学), which the second level
+ * index can't do. It's built from a single pass over the second level index
+ * and stored next to the wiki, where it's mapped into memory. Matches are
+ * turned back into titles with the wiki's {@link TitleTable}.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u32 number of titles, u32 number of bigrams</li>
+ *     <li>u32[bigrams] bigrams ((first char << 16) | second char), sorted</li>
+ *     <li>u32[bigrams + 1] start of each bigram's postings</li>
+ *     <li>postings: the sorted ordinals of the titles containing each bigram,
+ *     delta encoded as varints</li>
+ * </ul>
+ * Titles are numbered in sorted order, so results come out sorted too.
+ */
+public class TitleNgramIndex {
+
+    private static final String EXTENSION = ".ngram";
+    private static final int MAGIC = 0x4A574E47; // JWNG
+    private static final int VERSION = 2;
+
+    private final MappedByteBuffer buffer;
+
+    private final int numBigrams;
+
+    private final TitleTable titles;
+    private final int bigramsOffset;
+    private final int postingStartsOffset;
+    private final int postingsOffset;
+
+    private TitleNgramIndex(MappedByteBuffer buffer, TitleTable titles) {
+        this.buffer = buffer;
+        this.titles = titles;
+
+        int position = Sidecar.HEADER_SIZE;
+        numBigrams = buffer.getInt(position + 4);
+
+        bigramsOffset = position + 8;
+        postingStartsOffset = bigramsOffset + numBigrams * Integer.BYTES;
+        postingsOffset = postingStartsOffset + (numBigrams + 1) * Integer.BYTES;
+    }
+
+    /**
+     * Opens the index stored next to wiki, building it first if it doesn't
+     * exist or is out of date. Building reads the whole second level index,
+     * so this should be called in the background. titles is the wiki's
+     * {@link TitleTable}.
+     */
+    public static TitleNgramIndex openOrBuild(Wiki wiki, TitleTable titles) throws IOException {
+        File sidecar = Sidecar.fileFor(wiki, EXTENSION);
+
+        MappedByteBuffer buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+        if (buffer == null || buffer.getInt(Sidecar.HEADER_SIZE) != titles.size()) {
+            build(wiki, sidecar);
+            buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+            if (buffer == null) {
+                throw new IOException("failed to build " + sidecar);
+            }
+        }
+
+        return new TitleNgramIndex(buffer, titles);
+    }
+
+    /**
+     * Finds the titles which contain s (which must be at least 2 chars), in
+     * sorted order, and writes up to {@link Wiki#QUERY_LIMIT} of them to
+     * results.
+     */
+    public void search(String s, SearchResults results) {
+        results.clear();
+        if (s.length() < 2) {
+            return;
+        }
+
+        // The postings for each distinct bigram of s, as [start, end) in the
+        // postings section.
+        int[] bigrams = bigramsOf(s);
+        long[] ranges = new long[bigrams.length];
+        for (int i = 0; i < bigrams.length; i++) {
+            int index = findBigram(bigrams[i]);
+            if (index < 0) {
+                return;
+            }
+
+            int start = buffer.getInt(postingStartsOffset + index * Integer.BYTES);
+            int end = buffer.getInt(postingStartsOffset + (index + 1) * Integer.BYTES);
+            ranges[i] = (long) (end - start) << 32 | start;
+        }
+
+        // Start with the shortest list so that there are as few candidates as
+        // possible.
+        Arrays.sort(ranges);
+
+        int[] candidates = decode(ranges[0]);
+        int numCandidates = candidates.length;
+        for (int i = 1; i < ranges.length && numCandidates > 0; i++) {
+            numCandidates = intersect(candidates, numCandidates, ranges[i]);
+        }
+
+        char[] key = new char[Wiki.MAX_KEY_LENGTH];
+        for (int i = 0; i < numCandidates && results.size() < Wiki.QUERY_LIMIT; i++) {
+            int title = candidates[i];
+            int length = titles.getTitle(title, key);
+
+            // Having all of the bigrams doesn't guarantee that they're
+            // consecutive, except when there's only one
+            if (s.length() == 2 || contains(key, length, s)) {
+                results.add(key, 0, length, titles.getEntryOffset(title));
+            }
+        }
+    }
+
+    private int findBigram(int bigram) {
+        int low = 0;
+        int high = numBigrams - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = buffer.getInt(bigramsOffset + mid * Integer.BYTES);
+            if (value < bigram) {
+                low = mid + 1;
+            } else if (value > bigram) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private int[] decode(long range) {
+        int start = (int) range;
+        int end = start + (int) (range >>> 32);
+
+        // Each posting takes at least 1 byte
+        int[] postings = new int[end - start];
+        int n = 0;
+        int position = postingsOffset + start;
+        int limit = postingsOffset + end;
+        int previous = -1;
+        while (position < limit) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            previous += delta;
+            postings[n++] = previous;
+        }
+
+        return Arrays.copyOf(postings, n);
+    }
+
+    /**
+     * Keeps the candidates which are also in the postings in range, in place.
+     * Returns the new number of candidates.
+     */
+    private int intersect(int[] candidates, int numCandidates, long range) {
+        int position = postingsOffset + (int) range;
+        int limit = position + (int) (range >>> 32);
+
+        int kept = 0;
+        int i = 0;
+        int posting = -1;
+        while (i < numCandidates && position < limit) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            posting += delta;
+
+            while (i < numCandidates && candidates[i] < posting) {
+                i++;
+            }
+            if (i < numCandidates && candidates[i] == posting) {
+                candidates[kept++] = posting;
+                i++;
+            }
+        }
+
+        return kept;
+    }
+
+    private static int[] bigramsOf(String s) {
+        int[] bigrams = new int[s.length() - 1];
+        for (int i = 0; i < bigrams.length; i++) {
+            bigrams[i] = s.charAt(i) << 16 | s.charAt(i + 1);
+        }
+
+        Arrays.sort(bigrams);
+        int n = 0;
+        for (int i = 0; i < bigrams.length; i++) {
+            if (i == 0 || bigrams[i] != bigrams[i - 1]) {
+                bigrams[n++] = bigrams[i];
+            }
+        }
+        return Arrays.copyOf(bigrams, n);
+    }
+
+    private static boolean contains(char[] key, int keyLength, String s) {
+        for (int i = 0; i + s.length() <= keyLength; i++) {
+            int j = 0;
+            while (j < s.length() && key[i + j] == s.charAt(j)) {
+                j++;
+            }
+            if (j == s.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void build(Wiki wiki, File sidecar) throws IOException {
+        PostingsBuilder postings = new PostingsBuilder();
+        int[] numTitles = new int[1];
+        wiki.forEachKey((key, keyLength, entryOffset) -> {
+            for (int i = 0; i + 1 < keyLength; i++) {
+                postings.add(key[i] << 16 | key[i + 1], numTitles[0]);
+            }
+            numTitles[0]++;
+        });
+
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+
+            postings.write(channel, Sidecar.HEADER_SIZE + 8);
+
+            ByteBuffer header = ByteBuffer.allocate(Sidecar.HEADER_SIZE + 8);
+            Sidecar.putHeader(header, wiki.getFile(), MAGIC, VERSION);
+            header.putInt(numTitles[0]).putInt(postings.size);
+            header.flip();
+            Sidecar.writeFully(channel, header, 0);
+
+            channel.force(false);
+        }
+
+        Sidecar.commit(sidecar);
+    }
+
+    /**
+     * Collects the delta encoded postings of each bigram in memory, in an
+     * open addressing hash table from bigram to list.
+     */
+    private static class PostingsBuilder {
+
+        private int[] table = new int[1 << 16];
+        private int[] bigrams = new int[1 << 15];
+        private byte[][] data = new byte[1 << 15][];
+        private int[] lengths = new int[1 << 15];
+        private int[] lastOrdinals = new int[1 << 15];
+
+        int size;
+
+        PostingsBuilder() {
+            Arrays.fill(table, -1);
+        }
+
+        void add(int bigram, int ordinal) {
+            int list = findOrInsert(bigram);
+            if (lastOrdinals[list] == ordinal) {
+                // The bigram appears more than once in the title
+                return;
+            }
+
+            int delta = ordinal - lastOrdinals[list];
+            lastOrdinals[list] = ordinal;
+
+            byte[] bytes = data[list];
+            if (lengths[list] + 5 > bytes.length) {
+                bytes = data[list] = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+
+            int length = lengths[list];
+            while ((delta & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            lengths[list] = length;
+        }
+
+        private int findOrInsert(int bigram) {
+            int mask = table.length - 1;
+            int slot = mix(bigram) & mask;
+            while (table[slot] >= 0) {
+                if (bigrams[table[slot]] == bigram) {
+                    return table[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (size == bigrams.length) {
+                int capacity = size * 2;
+                bigrams = Arrays.copyOf(bigrams, capacity);
+                data = Arrays.copyOf(data, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                lastOrdinals = Arrays.copyOf(lastOrdinals, capacity);
+            }
+
+            int list = size++;
+            bigrams[list] = bigram;
+            data[list] = new byte[8];
+            lastOrdinals[list] = -1;
+            table[slot] = list;
+
+            if (size * 2 > table.length) {
+                rehash();
+            }
+
+            return list;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            for (int list = 0; list < size; list++) {
+                int slot = mix(bigrams[list]) & mask;
+                while (table[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = list;
+            }
+        }
+
+        private static int mix(int i) {
+            int h = i * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Writes the bigram, posting start, and posting sections starting at
+         * the given position.
+         */
+        void write(FileChannel channel, long position) throws IOException {
+            // Sort by bigram, keeping track of which list each came from
+            long[] order = new long[size];
+            for (int list = 0; list < size; list++) {
+                order[list] = (long) bigrams[list] << 32 | list;
+            }
+            Arrays.sort(order);
+
+            long postingStartsOffset = position + (long) size * Integer.BYTES;
+            long postingsOffset = postingStartsOffset + (size + 1L) * Integer.BYTES;
+
+            SectionWriter bigramWriter = new SectionWriter(channel, position);
+            SectionWriter startWriter = new SectionWriter(channel, postingStartsOffset);
+            SectionWriter postingWriter = new SectionWriter(channel, postingsOffset);
+
+            int start = 0;
+            for (long entry : order) {
+                int list = (int) entry;
+                bigramWriter.putInt(bigrams[list]);
+                startWriter.putInt(start);
+                postingWriter.put(data[list], 0, lengths[list]);
+                start += lengths[list];
+
+                // Free memory as it goes
+                data[list] = null;
+            }
+            startWriter.putInt(start);
+
+            bigramWriter.flush();
+            startWriter.flush();
+            postingWriter.flush();
+        }
+    }
+}
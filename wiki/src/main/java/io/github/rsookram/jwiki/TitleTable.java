@@ -0,0 +1,154 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Every title and its entry offset, by ordinal (its position in sorted
+ * order), for indexes which need to turn matches back into titles, like
+ * {@link NormalizedIndex} and {@link TitleNgramIndex}. They share a single
+ * table, which is stored next to the wiki and mapped into memory, so that
+ * the titles are only on disk and in memory once.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u32 number of titles, u32 number of title chars</li>
+ *     <li>u32[titles + 1] start of each title in the title chars</li>
+ *     <li>u64[titles] entry offset of each title</li>
+ *     <li>u16[chars] title chars</li>
+ * </ul>
+ */
+public final class TitleTable {
+
+    private static final String EXTENSION = ".titles";
+    private static final int MAGIC = 0x4A575454; // JWTT
+    private static final int VERSION = 1;
+
+    private final MappedByteBuffer buffer;
+
+    private final int numTitles;
+    private final int startsOffset;
+    private final int entryOffsetsOffset;
+    private final int charsOffset;
+
+    private TitleTable(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+
+        int position = Sidecar.HEADER_SIZE;
+        numTitles = buffer.getInt(position);
+
+        startsOffset = position + 8;
+        entryOffsetsOffset = startsOffset + (numTitles + 1) * Integer.BYTES;
+        charsOffset = entryOffsetsOffset + numTitles * Long.BYTES;
+    }
+
+    /**
+     * Opens the table stored next to wiki, building it first if it doesn't
+     * exist or is out of date. Building reads the whole second level index,
+     * so this should be called in the background.
+     */
+    public static TitleTable openOrBuild(Wiki wiki) throws IOException {
+        File sidecar = Sidecar.fileFor(wiki, EXTENSION);
+
+        MappedByteBuffer buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+        if (buffer == null) {
+            build(wiki, sidecar);
+            buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+            if (buffer == null) {
+                throw new IOException("failed to build " + sidecar);
+            }
+        }
+
+        return new TitleTable(buffer);
+    }
+
+    /**
+     * The number of titles, which is also the number of ordinals.
+     */
+    int size() {
+        return numTitles;
+    }
+
+    /**
+     * Copies the title with the given ordinal into key, returning its length.
+     */
+    int getTitle(int ordinal, char[] key) {
+        int start = buffer.getInt(startsOffset + ordinal * Integer.BYTES);
+        int length = buffer.getInt(startsOffset + (ordinal + 1) * Integer.BYTES) - start;
+
+        int position = charsOffset + start * Character.BYTES;
+        for (int i = 0; i < length; i++) {
+            key[i] = buffer.getChar(position + i * Character.BYTES);
+        }
+        return length;
+    }
+
+    long getEntryOffset(int ordinal) {
+        return buffer.getLong(entryOffsetsOffset + ordinal * Long.BYTES);
+    }
+
+    private static void build(Wiki wiki, File sidecar) throws IOException {
+        // First pass to size the sections so that everything can be written
+        // in the second pass.
+        int[] counts = new int[2];
+        wiki.forEachKey((key, keyLength, entryOffset) -> {
+            counts[0]++;
+            counts[1] += keyLength;
+        });
+        int numTitles = counts[0];
+        int numChars = counts[1];
+
+        long startsOffset = Sidecar.HEADER_SIZE + 8;
+        long entryOffsetsOffset = startsOffset + (numTitles + 1L) * Integer.BYTES;
+        long charsOffset = entryOffsetsOffset + (long) numTitles * Long.BYTES;
+
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+
+            SectionWriter starts = new SectionWriter(channel, startsOffset);
+            SectionWriter entryOffsets = new SectionWriter(channel, entryOffsetsOffset);
+            SectionWriter chars = new SectionWriter(channel, charsOffset);
+
+            int[] position = new int[1];
+            IOException[] error = new IOException[1];
+            wiki.forEachKey((key, keyLength, entryOffset) -> {
+                if (error[0] != null) {
+                    return;
+                }
+
+                try {
+                    starts.putInt(position[0]);
+                    entryOffsets.putLong(entryOffset);
+                    for (int i = 0; i < keyLength; i++) {
+                        chars.putChar(key[i]);
+                    }
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+                position[0] += keyLength;
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            starts.putInt(position[0]);
+
+            starts.flush();
+            entryOffsets.flush();
+            chars.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(Sidecar.HEADER_SIZE + 8);
+            Sidecar.putHeader(header, wiki.getFile(), MAGIC, VERSION);
+            header.putInt(numTitles).putInt(numChars);
+            header.flip();
+            Sidecar.writeFully(channel, header, 0);
+
+            channel.force(false);
+        }
+
+        Sidecar.commit(sidecar);
+    }
+}
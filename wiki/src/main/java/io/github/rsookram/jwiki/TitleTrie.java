@@ -0,0 +1,592 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Every title of a wiki and its entry offset in a compact radix trie, which
+ * can replace the second level index for lookups and prefix queries once
+ * it's built (see {@link Wiki#setTitleTrie(TitleTrie)}). A lookup follows
+ * one path from the root, so it takes time proportional to the length of the
+ * title, and never decodes a block or reads the file.
+ * <p>
+ * Nodes are numbered in breadth first order, so the children of each node
+ * are consecutive and only the first of them needs to be stored. Each node
+ * has a non-empty label (except for the root), and siblings are sorted by
+ * the first char of their labels, so a child is found with a binary search.
+ * Only nodes which end a title have an entry offset, which is found with the
+ * rank of the node in a bit vector.
+ * <p>
+ * It's stored next to the wiki and mapped into memory, so it's built once,
+ * but every page of it is loaded up front so that queries don't wait on
+ * storage. Its size is reported by {@link #sizeInBytes()}, since that's what
+ * it costs to enable.
+ * <p>
+ * After the {@link Sidecar} header, the file contains:
+ * <ul>
+ *     <li>u32 number of nodes (n)</li>
+ *     <li>u32 number of titles (t)</li>
+ *     <li>u32 number of label chars (c)</li>
+ *     <li>u32[n + 1] first child of each node</li>
+ *     <li>u32[n + 1] start of each node's label</li>
+ *     <li>u64[(n + 63) / 64] bits set for nodes which end a title</li>
+ *     <li>u32[(n + 63) / 64] number of bits set before each of those words</li>
+ *     <li>u16[c] chars of the labels</li>
+ *     <li>u40[t] entry offset of each title, in node order</li>
+ * </ul>
+ */
+public class TitleTrie {
+
+    private static final String EXTENSION = ".trie";
+    private static final int MAGIC = 0x4A575452; // JWTR
+    private static final int VERSION = 1;
+
+    private static final int COUNTS_OFFSET = Sidecar.HEADER_SIZE;
+    private static final int FIRST_CHILDREN_OFFSET = COUNTS_OFFSET + Integer.BYTES * 3;
+
+    private final MappedByteBuffer buffer;
+    private final int numNodes;
+    private final int numTitles;
+
+    private final int labelStartsOffset;
+    private final int terminalsOffset;
+    private final int ranksOffset;
+    private final int labelsOffset;
+    private final int entryOffsetsOffset;
+
+    private final ThreadLocal<Walk> walks = ThreadLocal.withInitial(Walk::new);
+
+    private TitleTrie(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        numNodes = buffer.getInt(COUNTS_OFFSET);
+        numTitles = buffer.getInt(COUNTS_OFFSET + 4);
+        int numLabelChars = buffer.getInt(COUNTS_OFFSET + 8);
+        int numWords = (numNodes + 63) / 64;
+
+        labelStartsOffset = FIRST_CHILDREN_OFFSET + (numNodes + 1) * Integer.BYTES;
+        terminalsOffset = labelStartsOffset + (numNodes + 1) * Integer.BYTES;
+        ranksOffset = terminalsOffset + numWords * Long.BYTES;
+        labelsOffset = ranksOffset + numWords * Integer.BYTES;
+        entryOffsetsOffset = labelsOffset + numLabelChars * Character.BYTES;
+    }
+
+    /**
+     * Opens the trie stored next to wiki, building it first if it doesn't
+     * exist or is out of date, and reads all of it into memory. Building
+     * holds every title in memory at once, and both steps do I/O, so this
+     * should be called in the background.
+     */
+    public static TitleTrie openOrBuild(Wiki wiki) throws IOException {
+        File sidecar = Sidecar.fileFor(wiki, EXTENSION);
+
+        MappedByteBuffer buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+        if (buffer == null) {
+            build(wiki, sidecar);
+            buffer = Sidecar.map(sidecar, wiki.getFile(), MAGIC, VERSION);
+            if (buffer == null) {
+                throw new IOException("failed to build " + sidecar);
+            }
+        }
+
+        buffer.load();
+        return new TitleTrie(buffer);
+    }
+
+    /**
+     * Returns the number of bytes of memory the trie takes up once it's
+     * loaded.
+     */
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    public int size() {
+        return numTitles;
+    }
+
+    /**
+     * Returns the entry offset of title, or -1 if it isn't in the wiki.
+     */
+    long find(String title) {
+        int node = 0;
+        int position = 0;
+        while (true) {
+            int labelStart = labelStart(node);
+            int labelLength = labelStart(node + 1) - labelStart;
+            if (position + labelLength > title.length()) {
+                return -1;
+            }
+            for (int i = 0; i < labelLength; i++) {
+                if (labelChar(labelStart + i) != title.charAt(position + i)) {
+                    return -1;
+                }
+            }
+            position += labelLength;
+
+            if (position == title.length()) {
+                return isTerminal(node) ? entryOffset(node) : -1;
+            }
+
+            node = findChild(node, title.charAt(position));
+            if (node < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Adds titles which start with prefix to results, in order, starting
+     * from the first one which is >= from (which must start with prefix, or
+     * be prefix itself), up to the {@link Wiki#QUERY_LIMIT}. The title after
+     * the last one added, if any, is written to nextKey, and its length is
+     * returned. Otherwise -1 is returned.
+     */
+    int query(String prefix, char[] from, int fromLength, SearchResults results, char[] nextKey) {
+        Walk walk = walks.get();
+        if (!walk.seek(prefix, from, fromLength)) {
+            return -1;
+        }
+
+        while (walk.next()) {
+            if (results.size() == Wiki.QUERY_LIMIT) {
+                System.arraycopy(walk.key, 0, nextKey, 0, walk.keyLength);
+                return walk.keyLength;
+            }
+            results.add(walk.key, 0, walk.keyLength, entryOffset(walk.current));
+        }
+        return -1;
+    }
+
+    /**
+     * The number of nodes visited by the last {@link #query} on this thread.
+     */
+    int nodesVisited() {
+        return walks.get().visited;
+    }
+
+    private int findChild(int node, char ch) {
+        int lo = firstChild(node);
+        int hi = firstChild(node + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = labelChar(labelStart(mid));
+            if (first < ch) {
+                lo = mid + 1;
+            } else if (first > ch) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private int firstChild(int node) {
+        return buffer.getInt(FIRST_CHILDREN_OFFSET + node * Integer.BYTES);
+    }
+
+    private int labelStart(int node) {
+        return buffer.getInt(labelStartsOffset + node * Integer.BYTES);
+    }
+
+    private char labelChar(int i) {
+        return buffer.getChar(labelsOffset + i * Character.BYTES);
+    }
+
+    private boolean isTerminal(int node) {
+        long word = buffer.getLong(terminalsOffset + (node >>> 6) * Long.BYTES);
+        return (word & (1L << node)) != 0;
+    }
+
+    private long entryOffset(int node) {
+        long word = buffer.getLong(terminalsOffset + (node >>> 6) * Long.BYTES);
+        int rank = buffer.getInt(ranksOffset + (node >>> 6) * Integer.BYTES) +
+                Long.bitCount(word & ((1L << node) - 1));
+
+        int offset = entryOffsetsOffset + rank * 5;
+        return (long) (buffer.get(offset + 4) & 0xFF) << 32 | (buffer.getInt(offset) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An in order walk over the titles under a node, which visits each node
+     * before its children. The path from the root to the current node is
+     * kept on a stack, along with the next child to visit at each level.
+     */
+    private final class Walk {
+
+        // Every node but the root has at least one char in its label, so the
+        // path to a node is never longer than its key
+        final int[] nodes = new int[Wiki.MAX_KEY_LENGTH + 1];
+        final int[] nextChildren = new int[Wiki.MAX_KEY_LENGTH + 1];
+        final int[] keyLengths = new int[Wiki.MAX_KEY_LENGTH + 1];
+        final char[] key = new char[Wiki.MAX_KEY_LENGTH];
+
+        int depth;
+        int keyLength;
+
+        // The depth of the node whose subtree is being walked
+        int floor;
+
+        // The node of the title which next() stopped at
+        int current;
+
+        // Whether the node on top of the stack still needs to be visited
+        boolean pending;
+
+        // The number of nodes pushed since the last seek
+        int visited;
+
+        /**
+         * Positions the walk so that next() returns titles which start with
+         * prefix, from the first one >= from. Returns false if there aren't
+         * any.
+         */
+        boolean seek(String prefix, char[] from, int fromLength) {
+            depth = -1;
+            keyLength = 0;
+            visited = 0;
+
+            // Find the node whose subtree holds every title which starts with
+            // prefix
+            int node = 0;
+            while (true) {
+                push(node);
+                int labelStart = labelStart(node);
+                int labelLength = labelStart(node + 1) - labelStart;
+                int matched = keyLength - labelLength;
+                for (int i = matched; i < Math.min(keyLength, prefix.length()); i++) {
+                    if (key[i] != prefix.charAt(i)) {
+                        return false;
+                    }
+                }
+                if (keyLength >= prefix.length()) {
+                    break;
+                }
+
+                node = findChild(node, prefix.charAt(keyLength));
+                if (node < 0) {
+                    return false;
+                }
+            }
+            floor = depth;
+
+            // Skip the titles in it which are before from
+            while (true) {
+                node = nodes[depth];
+                int cmp = compare(from, fromLength);
+                if (cmp > 0 || (cmp == 0 && keyLength >= fromLength)) {
+                    pending = true;
+                    return true;
+                } else if (cmp < 0) {
+                    // Everything under node is before from
+                    nextChildren[depth] = firstChild(node + 1);
+                    pending = false;
+                    return true;
+                }
+
+                // The path is a prefix of from, so it comes down to the
+                // children whose first char is >= the next char of from
+                int child = findChild(node, from[keyLength]);
+                pending = false;
+                if (child < 0) {
+                    nextChildren[depth] = -(child + 1);
+                    return true;
+                }
+                nextChildren[depth] = child + 1;
+                push(child);
+            }
+        }
+
+        /**
+         * Moves to the next title, in order. Returns false once there are no
+         * more.
+         */
+        boolean next() {
+            while (depth >= floor) {
+                if (pending) {
+                    pending = false;
+                    if (isTerminal(nodes[depth])) {
+                        current = nodes[depth];
+                        return true;
+                    }
+                }
+
+                int parent = nodes[depth];
+                if (nextChildren[depth] < firstChild(parent + 1)) {
+                    push(nextChildren[depth]++);
+                    pending = true;
+                } else {
+                    depth--;
+                    keyLength = depth >= 0 ? keyLengths[depth] : 0;
+                }
+            }
+            return false;
+        }
+
+        private void push(int node) {
+            visited++;
+            depth++;
+            nodes[depth] = node;
+            nextChildren[depth] = firstChild(node);
+
+            int labelStart = labelStart(node);
+            int labelEnd = labelStart(node + 1);
+            for (int i = labelStart; i < labelEnd; i++) {
+                key[keyLength++] = labelChar(i);
+            }
+            keyLengths[depth] = keyLength;
+        }
+
+        /**
+         * Compares the path to the current node with from, up to the length
+         * of the shorter of the two.
+         */
+        private int compare(char[] from, int fromLength) {
+            for (int i = 0; i < Math.min(keyLength, fromLength); i++) {
+                int cmp = key[i] - from[i];
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static void build(Wiki wiki, File sidecar) throws IOException {
+        Titles titles = Titles.read(wiki);
+
+        // The first pass only counts, so that the size of every section is
+        // known before the second one writes them
+        Builder counter = new Builder(titles, null, 0, 0);
+        counter.run();
+
+        try (RandomAccessFile file = Sidecar.create(sidecar)) {
+            FileChannel channel = file.getChannel();
+
+            new Builder(titles, channel, counter.numNodes, counter.numLabelChars).run();
+
+            ByteBuffer header = ByteBuffer.allocate(FIRST_CHILDREN_OFFSET);
+            Sidecar.putHeader(header, wiki.getFile(), MAGIC, VERSION);
+            header.putInt(counter.numNodes).putInt(counter.numTitles).putInt(counter.numLabelChars);
+            header.flip();
+            Sidecar.writeFully(channel, header, 0);
+
+            channel.force(false);
+        }
+
+        Sidecar.commit(sidecar);
+    }
+
+    /**
+     * Every title and entry offset in the wiki, in sorted order.
+     */
+    private static final class Titles {
+
+        char[] chars = new char[1024];
+        int[] starts = new int[1025];
+        long[] entryOffsets = new long[1024];
+        int size;
+
+        static Titles read(Wiki wiki) {
+            Titles titles = new Titles();
+            wiki.forEachKey(titles::add);
+            return titles;
+        }
+
+        private void add(char[] key, int keyLength, long entryOffset) {
+            if (size + 1 == entryOffsets.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                entryOffsets = Arrays.copyOf(entryOffsets, entryOffsets.length * 2);
+            }
+            int start = starts[size];
+            if (start + keyLength > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + keyLength));
+            }
+
+            System.arraycopy(key, 0, chars, start, keyLength);
+            entryOffsets[size] = entryOffset;
+            size++;
+            starts[size] = start + keyLength;
+        }
+
+        int length(int i) {
+            return starts[i + 1] - starts[i];
+        }
+
+        char charAt(int i, int position) {
+            return chars[starts[i] + position];
+        }
+
+        /**
+         * The length of the prefix shared by titles i and j.
+         */
+        int commonPrefixLength(int i, int j, int from) {
+            int max = Math.min(length(i), length(j));
+            int n = from;
+            while (n < max && charAt(i, n) == charAt(j, n)) {
+                n++;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Lays out the trie in breadth first order, a level at a time. Each node
+     * is a range of titles which share a prefix: [lo, hi) of the sorted
+     * titles, whose label is [start, end) of title lo. With a null channel,
+     * this only counts the nodes, titles and label chars.
+     */
+    private static final class Builder {
+
+        private final Titles titles;
+        private final FileChannel channel;
+
+        int numNodes;
+        int numTitles;
+        int numLabelChars;
+
+        private SectionWriter firstChildren;
+        private SectionWriter labelStarts;
+        private SectionWriter terminals;
+        private SectionWriter ranks;
+        private SectionWriter labels;
+        private SectionWriter entryOffsets;
+
+        private int nextChild = 1;
+        private long terminalWord;
+        // The nodes of the level being read, and of the next one, as
+        // (lo, hi, start, end)
+        private int[] level = new int[64];
+        private int[] nextLevel = new int[64];
+        private int nextLevelSize;
+
+        /**
+         * @param numNodes      the number of nodes, as counted by a previous
+         *                      pass, which is needed to lay out the file
+         * @param numLabelChars likewise for the number of label chars
+         */
+        Builder(Titles titles, FileChannel channel, int numNodes, int numLabelChars) {
+            this.titles = titles;
+            this.channel = channel;
+
+            if (channel != null) {
+                int numWords = (numNodes + 63) / 64;
+                long position = FIRST_CHILDREN_OFFSET;
+                firstChildren = new SectionWriter(channel, position);
+                position += (numNodes + 1) * (long) Integer.BYTES;
+                labelStarts = new SectionWriter(channel, position);
+                position += (numNodes + 1) * (long) Integer.BYTES;
+                terminals = new SectionWriter(channel, position);
+                position += numWords * (long) Long.BYTES;
+                ranks = new SectionWriter(channel, position);
+                position += numWords * (long) Integer.BYTES;
+                labels = new SectionWriter(channel, position);
+                position += numLabelChars * (long) Character.BYTES;
+                entryOffsets = new SectionWriter(channel, position);
+            }
+        }
+
+        void run() throws IOException {
+            int rootEnd = titles.size == 0 ? 0 : titles.commonPrefixLength(0, titles.size - 1, 0);
+            addToNextLevel(0, titles.size, 0, rootEnd);
+
+            while (nextLevelSize > 0) {
+                int[] tmp = level;
+                level = nextLevel;
+                nextLevel = tmp;
+                int levelSize = nextLevelSize;
+                nextLevelSize = 0;
+
+                for (int i = 0; i < levelSize; i += 4) {
+                    addNode(level[i], level[i + 1], level[i + 2], level[i + 3]);
+                }
+            }
+
+            if (channel == null) {
+                return;
+            }
+
+            firstChildren.putInt(nextChild);
+            labelStarts.putInt(numLabelChars);
+            if ((numNodes & 63) != 0) {
+                terminals.putLong(terminalWord);
+            }
+
+            firstChildren.flush();
+            labelStarts.flush();
+            terminals.flush();
+            ranks.flush();
+            labels.flush();
+            entryOffsets.flush();
+        }
+
+        private void addNode(int lo, int hi, int start, int end) throws IOException {
+            // Equal titles sort together, and the first one wins
+            boolean terminal = lo < hi && titles.length(lo) == end;
+            int childrenStart = lo;
+            while (childrenStart < hi && titles.length(childrenStart) == end) {
+                childrenStart++;
+            }
+
+            int numChildren = 0;
+            for (int i = childrenStart; i < hi; ) {
+                char ch = titles.charAt(i, end);
+                int j = i + 1;
+                while (j < hi && titles.charAt(j, end) == ch) {
+                    j++;
+                }
+
+                int childEnd = j - i == 1 ?
+                        titles.length(i) :
+                        titles.commonPrefixLength(i, j - 1, end + 1);
+                addToNextLevel(i, j, end, childEnd);
+                numChildren++;
+                i = j;
+            }
+
+            if (channel != null) {
+                firstChildren.putInt(nextChild);
+                labelStarts.putInt(numLabelChars);
+                for (int i = start; i < end; i++) {
+                    labels.putChar(titles.charAt(lo, i));
+                }
+
+                if ((numNodes & 63) == 0) {
+                    ranks.putInt(numTitles);
+                }
+                if (terminal) {
+                    terminalWord |= 1L << numNodes;
+                    long offset = titles.entryOffsets[lo];
+                    entryOffsets.putInt((int) offset);
+                    entryOffsets.putByte((int) (offset >>> 32));
+                }
+                if ((numNodes & 63) == 63) {
+                    terminals.putLong(terminalWord);
+                    terminalWord = 0;
+                }
+            }
+
+            if (terminal) {
+                numTitles++;
+            }
+            numLabelChars += end - start;
+            nextChild += numChildren;
+            numNodes++;
+        }
+
+        private void addToNextLevel(int lo, int hi, int start, int end) {
+            if (nextLevelSize + 4 > nextLevel.length) {
+                nextLevel = Arrays.copyOf(nextLevel, nextLevel.length * 2);
+            }
+            nextLevel[nextLevelSize++] = lo;
+            nextLevel[nextLevelSize++] = hi;
+            nextLevel[nextLevelSize++] = start;
+            nextLevel[nextLevelSize++] = end;
+        }
+    }
+}
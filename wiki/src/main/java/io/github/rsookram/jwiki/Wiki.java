@@ -0,0 +1,915 @@
+package io.github.rsookram.jwiki;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * Reads files created by wiki-builder. This has no Android dependencies so
+ * that it can also be used from benchmarks and tools on the JVM.
+ */
+public class Wiki implements Closeable {
+
+    // Each row of the second level index has a 1 byte common prefix length and
+    // a 1 byte remaining length, so keys are at most 2 * 255 chars.
+    static final int MAX_KEY_LENGTH = 2 * 255;
+
+    // Each entry starts with its compressed length
+    private static final int ENTRY_LENGTH_BYTES = 3;
+
+    // The number of results in a page
+    public static final int QUERY_LIMIT = 32;
+
+    // Below this, handing blocks to other threads costs more than it saves
+    private static final int MIN_PARALLEL_GROUPS = 16;
+
+    /**
+     * All reads go through positional reads on this channel (or the mapping
+     * of the second level index), so there is no shared cursor and a single
+     * instance can be used from multiple threads at once.
+     */
+    private final FileChannel channel;
+    private final File file;
+    private final FirstLevelIndex firstLevelIndex;
+
+    /**
+     * The second level index, mapped into memory so that lookups don't need
+     * any syscalls once its pages are resident. Its size is limited to 2^30 B
+     * so it always fits in a single mapping.
+     */
+    private final MappedByteBuffer secondLevelIndex;
+
+    // Preset dictionaries which entries may have been compressed with
+    private final Dictionaries dictionaries;
+    private final InflaterPool inflaters = new InflaterPool(4);
+
+    private final EntryCache entryCache = new EntryCache(1024 * 1024 * 8);
+    private final BlockCache blockCache = new BlockCache(1024 * 1024 * 4);
+
+    private final ThreadLocal<char[]> keys = ThreadLocal.withInitial(() -> new char[MAX_KEY_LENGTH]);
+
+    // Set once it's been loaded, since building it takes a pass over the index
+    private volatile TitleFilter titleFilter;
+
+    // Replaces the index for finding titles once it's set
+    private volatile TitleTrie titleTrie;
+
+    // Whether the index was loaded from a snapshot rather than the file
+    private final boolean fromSnapshot;
+    private final IndexSnapshot snapshot;
+
+    /**
+     * Opens the wiki at f. This reads the first level index from an
+     * {@link IndexSnapshot} saved next to it if there's an up to date one (see
+     * {@link #saveSnapshot()}), and from the end of the file otherwise. Either
+     * way it does I/O, so it shouldn't be called on a UI thread.
+     */
+    public Wiki(File f) {
+        this(f, true);
+    }
+
+    /**
+     * Like {@link #Wiki(File)}, but if useSnapshot is false, the index is
+     * always read from the file itself, e.g. to verify it.
+     */
+    Wiki(File f, boolean useSnapshot) {
+        this.file = f;
+        try {
+            this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+
+            // Located by the end of the file, so it's read first
+            this.dictionaries = Dictionaries.read(channel);
+
+            IndexSnapshot snapshot = useSnapshot ? loadSnapshot(f) : null;
+            this.fromSnapshot = snapshot != null;
+            if (snapshot == null) {
+                snapshot = readTrailer(channel.size() - dictionaries.trailerSize());
+            }
+            this.snapshot = snapshot;
+            if (dictionaries.offset() > snapshot.secondLevelIndexOffset) {
+                throw new IOException("dictionaries at " + dictionaries.offset() + " are after the second level index");
+            }
+            this.firstLevelIndex = snapshot.firstLevelIndex;
+
+            this.secondLevelIndex = channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    snapshot.secondLevelIndexOffset,
+                    snapshot.secondLevelIndexLength
+            );
+            secondLevelIndex.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static IndexSnapshot loadSnapshot(File f) {
+        try {
+            return IndexSnapshot.load(f);
+        } catch (IOException e) {
+            // The snapshot is only an optimization, so fall back to the file
+            return null;
+        }
+    }
+
+    /**
+     * Reads the location of the second level index, and the first level
+     * index, from the end of the file. length is the size of the file, less
+     * any trailer after them.
+     */
+    private IndexSnapshot readTrailer(long length) throws IOException {
+        byte[] buffer = new byte[16];
+
+        int firstLevelIndexSizeLength = 2;
+        readFully(buffer, firstLevelIndexSizeLength, length - firstLevelIndexSizeLength);
+
+        int firstLevelIndexSize = u16leToInt(buffer);
+        if (firstLevelIndexSize < 2 || firstLevelIndexSize >= 1 << 16) {
+            throw new RuntimeException("invalid first level index size " + firstLevelIndexSize);
+        }
+
+        int firstLevelIndexRowSize = 12;
+        int numFirstLevelIndexEntries = (firstLevelIndexSize - firstLevelIndexSizeLength) / firstLevelIndexRowSize;
+
+        int secondLevelIndexSizeLength = Integer.BYTES;
+        readFully(buffer, secondLevelIndexSizeLength, length - firstLevelIndexSize - secondLevelIndexSizeLength);
+
+        int secondLevelIndexSize = u32leToInt(buffer);
+        if (secondLevelIndexSize < 4 || secondLevelIndexSize > 1 << 30) {
+            throw new RuntimeException("invalid second level index size " + secondLevelIndexSize);
+        }
+
+        byte[] firstLevelIndexBytes = new byte[firstLevelIndexSize - firstLevelIndexSizeLength];
+        readFully(firstLevelIndexBytes, firstLevelIndexBytes.length, length - firstLevelIndexSize);
+        FirstLevelIndex firstLevelIndex = FirstLevelIndex.read(
+                new ByteArrayInputStream(firstLevelIndexBytes), numFirstLevelIndexEntries, buffer
+        );
+
+        return new IndexSnapshot(
+                length - firstLevelIndexSize - secondLevelIndexSize,
+                secondLevelIndexSize - secondLevelIndexSizeLength,
+                firstLevelIndex
+        );
+    }
+
+    /**
+     * Saves a snapshot of the first level index next to the wiki so that it
+     * opens faster next time. Does nothing if it was opened from one.
+     */
+    public void saveSnapshot() throws IOException {
+        if (!fromSnapshot) {
+            snapshot.save(file);
+        }
+    }
+
+    /**
+     * Reads the whole second level index into the page cache so that the
+     * first queries don't have to wait for it to be read from disk. This can
+     * take a while for large wikis, so it should be called in the background.
+     */
+    public void warmUp() {
+        secondLevelIndex.load();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public SearchResults query(String prefix) {
+        SearchResults results = new SearchResults();
+        query(prefix, new Cursor(), results);
+        return results;
+    }
+
+    /**
+     * Like {@link #query(String)}, but the results are written to the given
+     * (reusable) instance. If the cursor has been set by a previous query for
+     * a prefix of this one, the scan resumes from where that query found its
+     * first match instead of starting again from the beginning of the block.
+     * The cursor is updated to point at the first match of this query. Once a
+     * {@link TitleTrie} is set, queries go through it instead, and the cursor
+     * is reset since it isn't needed.
+     */
+    public void query(String prefix, Cursor cursor, SearchResults results) {
+        query(prefix, cursor, null, results);
+    }
+
+    /**
+     * Like {@link #query(String, Cursor, SearchResults)}, but if next isn't
+     * null, it's set to the row after the last result so that the following
+     * page of results can be read with
+     * {@link #queryNext(String, Cursor, SearchResults)}. There can only be
+     * more results when this page is full.
+     */
+    public void query(String prefix, Cursor cursor, Cursor next, SearchResults results) {
+        if (prefix.isEmpty()) {
+            throw new RuntimeException("tried to query for an empty string");
+        }
+
+        long start = Metrics.QUERY.begin();
+        try {
+            TitleTrie trie = titleTrie;
+            if (trie != null) {
+                cursor.reset();
+                results.clear();
+                if (prefix.length() > MAX_KEY_LENGTH) {
+                    // Longer than any title
+                    if (next != null) {
+                        next.reset();
+                    }
+                    return;
+                }
+
+                // The walk starts from the prefix itself. It's copied into
+                // the scratch key, which the trie only writes to once it's
+                // done reading from it.
+                char[] key = keys.get();
+                prefix.getChars(0, prefix.length(), key, 0);
+                queryTrie(trie, prefix, key, prefix.length(), next, results);
+            } else {
+                Metrics.ROWS_SCANNED.record(scan(prefix, cursor, next, results));
+            }
+        } finally {
+            Metrics.QUERY.end(start);
+        }
+    }
+
+    /**
+     * Reads the next page of results for prefix, resuming the scan at next
+     * (as set by a previous query for prefix), and moves next past them. Each
+     * page costs the same no matter how far into the results it is.
+     */
+    public void queryNext(String prefix, Cursor next, SearchResults results) {
+        results.clear();
+        if (!next.isSet()) {
+            return;
+        }
+
+        long start = Metrics.QUERY.begin();
+        try {
+            char[] key = keys.get();
+            System.arraycopy(next.key, 0, key, 0, next.keyLength);
+            if (next.isInTrie()) {
+                queryTrie(titleTrie, prefix, key, next.keyLength, next, results);
+            } else {
+                Metrics.ROWS_SCANNED.record(collect(prefix, next.position, key, next.keyLength, next, results));
+            }
+        } finally {
+            Metrics.QUERY.end(start);
+        }
+    }
+
+    /**
+     * Adds the titles which start with prefix from the first one >= from, and
+     * sets next (if it isn't null) to the title after them.
+     */
+    private void queryTrie(TitleTrie trie, String prefix, char[] from, int fromLength, Cursor next, SearchResults results) {
+        char[] nextKey = keys.get();
+        int nextKeyLength = trie.query(prefix, from, fromLength, results, nextKey);
+        if (Metrics.isEnabled()) {
+            Metrics.ROWS_SCANNED.record(trie.nodesVisited());
+        }
+        if (next == null) {
+            return;
+        }
+
+        if (nextKeyLength < 0) {
+            next.reset();
+        } else {
+            next.set(Cursor.IN_TRIE, nextKey, nextKeyLength);
+        }
+    }
+
+    /**
+     * Does the work of {@link #query(String, Cursor, Cursor, SearchResults)},
+     * and returns the number of rows read.
+     */
+    private int scan(String prefix, Cursor cursor, Cursor next, SearchResults results) {
+        results.clear();
+
+        char[] key = keys.get();
+        int end = secondLevelIndex.limit();
+
+        int position;
+        int keyLength;
+        if (cursor.isSet()) {
+            position = cursor.position;
+            keyLength = cursor.keyLength;
+            System.arraycopy(cursor.key, 0, key, 0, keyLength);
+        } else {
+            int slot = blockFor(prefix);
+            if (slot < 0) {
+                if (next != null) {
+                    next.reset();
+                }
+                return 0;
+            }
+            position = firstLevelIndex.getOffsetAt(slot);
+            keyLength = position < end ? readKey(position, key) : 0;
+        }
+
+        int rows = 1;
+        while (position < end && compareTo(key, keyLength, prefix) < 0) {
+            position = nextRow(position);
+            if (position < end) {
+                keyLength = readKey(position, key);
+                rows++;
+            }
+        }
+
+        cursor.set(position, key, keyLength);
+
+        return rows + collect(prefix, position, key, keyLength, next, results);
+    }
+
+    /**
+     * Adds keys starting from the row at position (whose key has already been
+     * decoded into key) while they start with prefix, up to the limit. If next
+     * isn't null, it's set to the row after the last one added. Returns the
+     * number of rows read after the first.
+     */
+    private int collect(String prefix, int position, char[] key, int keyLength, Cursor next, SearchResults results) {
+        int end = secondLevelIndex.limit();
+
+        int rows = 0;
+        while (position < end && startsWith(key, keyLength, prefix) && results.size() < QUERY_LIMIT) {
+            results.add(key, 0, keyLength, entryOffset(position));
+
+            position = nextRow(position);
+            if (position < end) {
+                keyLength = readKey(position, key);
+                rows++;
+            }
+        }
+
+        if (next != null) {
+            next.set(position, key, keyLength);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Visits every key in the second level index, in sorted order, with a
+     * single sequential pass over it. The key array is reused between calls.
+     */
+    public void forEachKey(KeyVisitor visitor) {
+        char[] key = keys.get();
+        int end = secondLevelIndex.limit();
+        for (int position = 0; position < end; position = nextRow(position)) {
+            int keyLength = readKey(position, key);
+            visitor.visit(key, keyLength, entryOffset(position));
+        }
+    }
+
+    /**
+     * Decodes the key of the row at the given position of the second level
+     * index into key, on top of the previous row's key which it shares a
+     * prefix with. Returns the length of the key.
+     */
+    private int readKey(int position, char[] key) {
+        int commonPrefixLen = secondLevelIndex.get(position) & 0xFF;
+        int numRemainingChars = secondLevelIndex.get(position + 1) & 0xFF;
+
+        int charsStart = position + 2;
+        for (int i = 0; i < numRemainingChars; i++) {
+            key[commonPrefixLen + i] = secondLevelIndex.getChar(charsStart + i * Character.BYTES);
+        }
+
+        return commonPrefixLen + numRemainingChars;
+    }
+
+    private int nextRow(int position) {
+        int numRemainingChars = secondLevelIndex.get(position + 1) & 0xFF;
+        return position + 2 + numRemainingChars * Character.BYTES + 5;
+    }
+
+    private long entryOffset(int position) {
+        int numRemainingChars = secondLevelIndex.get(position + 1) & 0xFF;
+        int offset = position + 2 + numRemainingChars * Character.BYTES;
+
+        // 5 bytes is plenty for an offset. 2^40 B ~= 1 TB
+        return (long) (secondLevelIndex.get(offset + 4) & 0xFF) << 32 |
+                (secondLevelIndex.getInt(offset) & 0xFFFFFFFFL);
+    }
+
+    private static int compareTo(char[] key, int keyLength, String s) {
+        for (int i = 0; i < Math.min(keyLength, s.length()); i++) {
+            int cmp = key[i] - s.charAt(i);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return Integer.compare(keyLength, s.length());
+    }
+
+    private static boolean startsWith(char[] key, int keyLength, String prefix) {
+        if (prefix.length() > keyLength) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (key[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a stream over the compressed bytes of the entry at the given
+     * offset. Recently read entries come from {@link #getEntryCache()}.
+     * Entries too large to cache are streamed from the file without reading
+     * anything up front, so callers can start consuming them right away, no
+     * matter how large they are. Entries may need one of the wiki's preset
+     * dictionaries to inflate, so prefer {@link #getInflatedEntry(long)}.
+     */
+    public InputStream getEntry(long offset) {
+        return timedEntry(offset, false);
+    }
+
+    /**
+     * Returns the inflated contents of the entry at offset, e.g. the HTML of
+     * an article. This uses a pooled Inflater which is returned when the
+     * stream is closed, so it should always be closed.
+     */
+    public InputStream getInflatedEntry(long offset) {
+        return timedEntry(offset, true);
+    }
+
+    /**
+     * Records the time to open the entry and read it until it's closed in
+     * {@link Metrics#ENTRY}, since most of the work of reading it happens
+     * after the stream is returned.
+     */
+    private InputStream timedEntry(long offset, boolean inflate) {
+        long start = Metrics.ENTRY.begin();
+        InputStream in;
+        try {
+            in = readEntry(offset, inflate);
+        } catch (RuntimeException e) {
+            Metrics.ENTRY.end(start);
+            throw e;
+        }
+        return Metrics.ENTRY.endWhenClosed(start, in);
+    }
+
+    private InputStream readEntry(long offset, boolean inflate) {
+        byte[] cached = entryCache.get(offset);
+        if (cached != null) {
+            return wrap(cached, inflate);
+        }
+
+        try {
+            int compressedSize = readEntryLength(offset);
+            if (!entryCache.accepts(compressedSize)) {
+                InputStream in = new ChannelInputStream(channel, offset + ENTRY_LENGTH_BYTES, compressedSize);
+                return inflate ? new EntryInputStream(in, inflaters, dictionaries) : in;
+            }
+
+            return wrap(readIntoCache(offset, compressedSize), inflate);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the 3 byte length at the start of the entry at offset, after
+     * checking that the entry is within {@link #entriesEnd()}. Every read of
+     * an entry starts here.
+     */
+    private int readEntryLength(long offset) throws IOException {
+        long end = entriesEnd();
+        if (offset < 0 || offset + ENTRY_LENGTH_BYTES > end) {
+            throw new IOException("entry offset " + offset + " is past the end of the entries " + end);
+        }
+
+        byte[] lengthBytes = new byte[ENTRY_LENGTH_BYTES];
+        readFully(lengthBytes, lengthBytes.length, offset);
+
+        int compressedSize = entryLengthToInt(lengthBytes);
+        if (offset + ENTRY_LENGTH_BYTES + compressedSize > end) {
+            throw new IOException("entry at " + offset + " of length " + compressedSize +
+                    " is past the end of the entries " + end);
+        }
+        return compressedSize;
+    }
+
+    /**
+     * Reads the compressed bytes of the entry at offset, whose length has
+     * already been read, and adds them to the entry cache.
+     */
+    private byte[] readIntoCache(long offset, int compressedSize) throws IOException {
+        byte[] entry = new byte[compressedSize];
+        readFully(entry, entry.length, offset + ENTRY_LENGTH_BYTES);
+        entryCache.put(offset, entry);
+        return entry;
+    }
+
+    private InputStream wrap(byte[] entry, boolean inflate) {
+        return inflate ? new EntryInputStream(entry, inflaters, dictionaries) : new ByteArrayInputStream(entry);
+    }
+
+    /**
+     * Reads the entry at offset into the entry cache so that a later
+     * {@link #getEntry(long)} for it doesn't touch storage. Entries which are
+     * already cached, or too large to be, are skipped.
+     *
+     * @return the number of bytes read
+     */
+    public int prefetchEntry(long offset) {
+        if (entryCache.contains(offset)) {
+            return 0;
+        }
+
+        try {
+            int compressedSize = readEntryLength(offset);
+            if (!entryCache.accepts(compressedSize)) {
+                return 0;
+            }
+
+            readIntoCache(offset, compressedSize);
+            return compressedSize;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sets the filter used to reject lookups of titles which aren't in this
+     * wiki without reading the index. See {@link TitleFilter#openOrBuild(Wiki)}.
+     */
+    public void setTitleFilter(TitleFilter titleFilter) {
+        this.titleFilter = titleFilter;
+    }
+
+    /**
+     * Sets the trie which lookups and queries go through instead of the
+     * index. See {@link TitleTrie#openOrBuild(Wiki)}.
+     */
+    public void setTitleTrie(TitleTrie titleTrie) {
+        this.titleTrie = titleTrie;
+    }
+
+    public TitleTrie getTitleTrie() {
+        return titleTrie;
+    }
+
+    FirstLevelIndex getFirstLevelIndex() {
+        return firstLevelIndex;
+    }
+
+    public EntryCache getEntryCache() {
+        return entryCache;
+    }
+
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    // Needed for when clicking on a link. Names ruled out by the title filter
+    // (once it's set) return -1 without reading the index. Once the title
+    // trie is set, it's used instead.
+    public long getEntryOffset(String name) {
+        long start = Metrics.ENTRY_OFFSET.begin();
+        try {
+            return findEntryOffset(name);
+        } finally {
+            Metrics.ENTRY_OFFSET.end(start);
+        }
+    }
+
+    /**
+     * Like {@link #getEntryOffset(String)} for each of names, e.g. all of the
+     * links on a page. The result is aligned with the iteration order of
+     * names. The names are sorted and grouped by the index block they're in,
+     * so that each block is decoded once and searched in a single forward
+     * pass for its whole group, and the groups are resolved in parallel.
+     */
+    public long[] getEntryOffsets(Collection<String> names) {
+        String[] input = names.toArray(new String[0]);
+        long[] offsets = new long[input.length];
+
+        // Each lookup in the trie is cheap enough on its own
+        TitleTrie trie = titleTrie;
+        if (trie != null) {
+            for (int i = 0; i < input.length; i++) {
+                offsets[i] = trie.find(input[i]);
+            }
+            return offsets;
+        }
+
+        // Names which the filter rules out don't need to be looked up. The
+        // rest are the indexes in candidates.
+        TitleFilter filter = titleFilter;
+        int numCandidates = 0;
+        int[] candidates = new int[input.length];
+        for (int i = 0; i < input.length; i++) {
+            if (filter == null || filter.mightContain(input[i])) {
+                candidates[numCandidates++] = i;
+            } else {
+                offsets[i] = -1;
+            }
+        }
+        if (numCandidates == 0) {
+            return offsets;
+        }
+
+        // The candidates are looked up in sorted order, into found, and then
+        // each one finds its name with a binary search. This avoids sorting
+        // boxed indexes.
+        String[] sorted = new String[numCandidates];
+        for (int i = 0; i < numCandidates; i++) {
+            sorted[i] = input[candidates[i]];
+        }
+        Arrays.sort(sorted);
+        long[] found = new long[sorted.length];
+
+        // Group i is sorted[groupStarts[i], groupStarts[i + 1]), which are
+        // all in the same block
+        int[] slots = new int[sorted.length];
+        int[] groupStarts = new int[sorted.length + 1];
+        int numGroups = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            slots[i] = blockFor(sorted[i]);
+            if (i == 0 || slots[i] != slots[i - 1]) {
+                groupStarts[numGroups++] = i;
+            }
+        }
+        groupStarts[numGroups] = sorted.length;
+
+        IntStream groups = IntStream.range(0, numGroups);
+        if (numGroups >= MIN_PARALLEL_GROUPS) {
+            groups = groups.parallel();
+        }
+        groups.forEach(group -> {
+            int start = groupStarts[group];
+            int end = groupStarts[group + 1];
+            if (slots[start] < 0) {
+                Arrays.fill(found, start, end, -1);
+                return;
+            }
+
+            // Names are sorted, so each search can start from where the
+            // previous one ended
+            IndexBlock block = blockCache.get(slots[start], this::decodeBlock);
+            int row = 0;
+            for (int i = start; i < end; i++) {
+                String name = sorted[i];
+                int index = block.binarySearch(name, row);
+                if (index >= 0) {
+                    found[i] = block.getEntryOffset(index);
+                    row = index;
+                } else if (-(index + 1) < block.size()) {
+                    found[i] = -1;
+                    row = -(index + 1);
+                } else {
+                    // After every key in the block, so it could be in a later
+                    // one, which getEntryOffset handles
+                    found[i] = getEntryOffset(name);
+                    row = block.size();
+                }
+            }
+        });
+
+        for (int i = 0; i < numCandidates; i++) {
+            int candidate = candidates[i];
+            offsets[candidate] = found[Arrays.binarySearch(sorted, input[candidate])];
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Returns the key of the given row of the block at slot of the first
+     * level index.
+     */
+    String getKey(int slot, int row) {
+        return blockCache.get(slot, this::decodeBlock).getKey(row);
+    }
+
+    private long findEntryOffset(String name) {
+        TitleTrie trie = titleTrie;
+        if (trie != null) {
+            return trie.find(name);
+        }
+
+        TitleFilter filter = titleFilter;
+        if (filter != null && !filter.mightContain(name)) {
+            return -1;
+        }
+
+        int slot = blockFor(name);
+        if (slot < 0) {
+            return -1;
+        }
+
+        // A key can be in the block after the one picked by the first level
+        // index when its first level key got padded (e.g. keys shorter than
+        // 4 chars), so keep going while name is after every key in the block.
+        for (; slot < firstLevelIndex.size(); slot++) {
+            IndexBlock block = blockCache.get(slot, this::decodeBlock);
+
+            int i = block.binarySearch(name);
+            if (i >= 0) {
+                return block.getEntryOffset(i);
+            } else if (-(i + 1) < block.size()) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the slot of the block which s would be in, or -1 if the index
+     * is empty. Padding makes a first level key sort after every key which
+     * is a prefix of it, so the first level index puts keys like that before
+     * the first block, when they belong in it.
+     */
+    private int blockFor(String s) {
+        return firstLevelIndex.size() == 0 ? -1 : Math.max(firstLevelIndex.getSlot(s), 0);
+    }
+
+    private IndexBlock decodeBlock(int slot) {
+        int start = firstLevelIndex.getOffsetAt(slot);
+        int end = blockEnd(slot);
+
+        // Size everything up front so that it's allocated exactly once
+        int numRows = 0;
+        int numChars = 0;
+        for (int position = start; position < end; position = nextRow(position)) {
+            numRows++;
+            numChars += (secondLevelIndex.get(position) & 0xFF) + (secondLevelIndex.get(position + 1) & 0xFF);
+        }
+
+        char[] keyChars = new char[numChars];
+        int[] keyStarts = new int[numRows + 1];
+        long[] entryOffsets = new long[numRows];
+
+        char[] key = keys.get();
+        int row = 0;
+        for (int position = start; position < end; position = nextRow(position)) {
+            int keyLength = readKey(position, key);
+            System.arraycopy(key, 0, keyChars, keyStarts[row], keyLength);
+            keyStarts[row + 1] = keyStarts[row] + keyLength;
+            entryOffsets[row] = entryOffset(position);
+            row++;
+        }
+
+        return new IndexBlock(keyChars, keyStarts, entryOffsets);
+    }
+
+    private int blockEnd(int slot) {
+        return slot + 1 < firstLevelIndex.size() ?
+                firstLevelIndex.getOffsetAt(slot + 1) :
+                secondLevelIndex.limit();
+    }
+
+    /**
+     * Visits the keys of the block at slot, like {@link #forEachKey(KeyVisitor)}
+     * does for the whole index, but checks each row as it goes, since a
+     * corrupt row would otherwise decode to an arbitrary key. This is for
+     * verifying files, so it doesn't go through the block cache.
+     */
+    void forEachKeyInBlock(int slot, KeyVisitor visitor) throws IOException {
+        int start = firstLevelIndex.getOffsetAt(slot);
+        int end = blockEnd(slot);
+        if (start < 0 || start >= end || end > secondLevelIndex.limit()) {
+            throw new IOException("invalid bounds [" + start + ", " + end + ") for block " + slot);
+        }
+
+        char[] key = keys.get();
+        int keyLength = 0;
+        for (int position = start; position < end; position = nextRow(position)) {
+            if (position + 2 > end || nextRow(position) > end) {
+                throw new IOException("row at " + position + " overruns block " + slot);
+            }
+
+            // The first row of a block can't share a prefix with anything
+            int commonPrefixLen = secondLevelIndex.get(position) & 0xFF;
+            if (commonPrefixLen > keyLength) {
+                throw new IOException("row at " + position + " shares " + commonPrefixLen +
+                        " chars with a key of length " + keyLength);
+            }
+
+            keyLength = readKey(position, key);
+            visitor.visit(key, keyLength, entryOffset(position));
+        }
+    }
+
+    /**
+     * Returns the end of the entries, which come before the dictionaries (if
+     * any) and the index.
+     */
+    long entriesEnd() {
+        long dictionariesOffset = dictionaries.offset();
+        return dictionariesOffset >= 0 ? dictionariesOffset : snapshot.secondLevelIndexOffset;
+    }
+
+    /**
+     * Reads the compressed bytes of the entry at offset straight from the
+     * file, bypassing the entry cache, after checking that the entry is
+     * within {@link #entriesEnd()}.
+     */
+    byte[] readEntryBytes(long offset) throws IOException {
+        int compressedSize = readEntryLength(offset);
+        byte[] entry = new byte[compressedSize];
+        readFully(entry, entry.length, offset + ENTRY_LENGTH_BYTES);
+        return entry;
+    }
+
+    /**
+     * Returns a stream over the inflated contents of entry, as read by
+     * {@link #readEntryBytes(long)}. It should be closed to return its
+     * Inflater to the pool.
+     */
+    InputStream inflate(byte[] entry) {
+        return wrap(entry, true);
+    }
+
+    private void readFully(byte[] dst, int length, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(dst, 0, length);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new EOFException("unexpected end of file at " + (position + buf.position()));
+            }
+        }
+        Metrics.addBytesRead(length);
+    }
+
+    private int u16leToInt(byte[] bytes) {
+        return ((bytes[1] & 0xFF) << 8) | (bytes[0] & 0xFF);
+    }
+
+    private int u32leToInt(byte[] bytes) {
+        // Assuming that input is < 2^31 - 1
+        return (bytes[3] << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[1] & 0xFF) << 8) | (bytes[0] & 0xFF);
+    }
+
+    private int entryLengthToInt(byte[] bytes) {
+        return ((bytes[2] & 0xFF) << 16) | ((bytes[1] & 0xFF) << 8) | (bytes[0] & 0xFF);
+    }
+
+    public interface KeyVisitor {
+        void visit(char[] key, int keyLength, long entryOffset);
+    }
+
+    /**
+     * A position in the second level index along with the key of the row
+     * there. Since keys are front coded, both are needed to resume a scan.
+     * A cursor set by a query through a {@link TitleTrie} only has the key,
+     * which is where the next page starts.
+     */
+    public static final class Cursor {
+
+        private static final int IN_TRIE = Integer.MAX_VALUE;
+
+        private int position = -1;
+        private char[] key = new char[0];
+        private int keyLength;
+
+        public boolean isSet() {
+            return position >= 0;
+        }
+
+        public void reset() {
+            position = -1;
+        }
+
+        private boolean isInTrie() {
+            return position == IN_TRIE;
+        }
+
+        public void copyFrom(Cursor other) {
+            set(other.position, other.key, other.keyLength);
+        }
+
+        private void set(int position, char[] key, int keyLength) {
+            this.position = position;
+            if (this.key.length < keyLength) {
+                this.key = new char[MAX_KEY_LENGTH];
+            }
+            System.arraycopy(key, 0, this.key, 0, keyLength);
+            this.keyLength = keyLength;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArchivesTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int NUM_ARCHIVES = 3;
+
+    // The titles of each archive. Every archive has the shared titles, so
+    // the same key comes from several of them.
+    private static final List<TreeMap<String, Long>> offsets = new ArrayList<>();
+    private static Archives archives;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        List<Wiki> wikis = new ArrayList<>();
+        for (int i = 0; i < NUM_ARCHIVES; i++) {
+            File file = folder.newFile("archive" + i + ".wiki");
+            offsets.add(TestWikis.write(file, 1000, 10 + i));
+            wikis.add(new Wiki(file));
+        }
+        archives = new Archives(wikis);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        archives.close();
+    }
+
+    @Test
+    public void mergesInOrder() {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            assertQueryMatches(String.valueOf(c));
+        }
+        assertQueryMatches("ぁ");
+        assertQueryMatches(TestWikis.SHARED_PREFIX);
+        assertQueryMatches(TestWikis.SHARED_PREFIX + "1");
+        assertQueryMatches("zz");
+    }
+
+    @Test
+    public void firstPageHasTheSmallestKeys() {
+        Archives.Search search = archives.newSearch();
+        SearchResults out = new SearchResults();
+        search.query(TestWikis.SHARED_PREFIX, out);
+
+        assertEquals(expected(TestWikis.SHARED_PREFIX).subList(0, Wiki.QUERY_LIMIT), TestWikis.entries(out));
+        assertTrue(search.hasMore());
+    }
+
+    @Test
+    public void offsetsDecodeToTheirArchive() throws IOException {
+        List<Map.Entry<String, Long>> results = queryAll(TestWikis.SHARED_PREFIX);
+        assertEquals(NUM_ARCHIVES * TestWikis.NUM_SHARED, results.size());
+
+        for (Map.Entry<String, Long> e : results) {
+            long tagged = e.getValue();
+            int archive = Archives.archiveOf(tagged);
+            assertTrue(archive >= 0 && archive < NUM_ARCHIVES);
+
+            // The archive is above the bits of the offset
+            assertEquals(archive > 0, tagged >= 1L << 40);
+            assertEquals(Archives.tag(archive, offsets.get(archive).get(e.getKey())), tagged);
+
+            assertEquals("<p>" + e.getKey() + "</p>", read(archives.getInflatedEntry(tagged)));
+        }
+    }
+
+    @Test
+    public void lookupsPreferEarlierArchives() {
+        String shared = TestWikis.SHARED_PREFIX + "7";
+        assertEquals(Archives.tag(0, offsets.get(0).get(shared)), archives.getEntryOffset(shared));
+
+        String onlyInLast = onlyIn(NUM_ARCHIVES - 1);
+        long expected = Archives.tag(NUM_ARCHIVES - 1, offsets.get(NUM_ARCHIVES - 1).get(onlyInLast));
+        assertEquals(expected, archives.getEntryOffset(onlyInLast));
+
+        assertEquals(-1, archives.getEntryOffset("zz"));
+
+        long[] batch = archives.getEntryOffsets(List.of(onlyInLast, "zz", shared));
+        assertEquals(expected, batch[0]);
+        assertEquals(-1, batch[1]);
+        assertEquals(archives.getEntryOffset(shared), batch[2]);
+    }
+
+    @Test
+    public void newQueryReplacesTheLastOne() {
+        Archives.Search search = archives.newSearch();
+        SearchResults out = new SearchResults();
+        search.query(TestWikis.SHARED_PREFIX, out);
+        search.query("zz", out);
+
+        assertEquals(0, out.size());
+        assertFalse(search.hasMore());
+    }
+
+    private static void assertQueryMatches(String prefix) {
+        assertEquals(prefix, expected(prefix), queryAll(prefix));
+    }
+
+    /**
+     * The matches of every archive, ordered by key, then by archive.
+     */
+    private static List<Map.Entry<String, Long>> expected(String prefix) {
+        List<Map.Entry<String, Long>> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_ARCHIVES; i++) {
+            for (Map.Entry<String, Long> e : TestWikis.matches(offsets.get(i), prefix)) {
+                expected.add(Map.entry(e.getKey(), Archives.tag(i, e.getValue())));
+            }
+        }
+        // The sort is stable, so the same key stays in order of archive
+        expected.sort(Map.Entry.comparingByKey());
+        return expected;
+    }
+
+    private static List<Map.Entry<String, Long>> queryAll(String prefix) {
+        Archives.Search search = archives.newSearch();
+        SearchResults out = new SearchResults();
+        search.query(prefix, out);
+        while (search.hasMore()) {
+            search.queryMore(out);
+        }
+        return TestWikis.entries(out);
+    }
+
+    private static String onlyIn(int archive) {
+        for (String title : offsets.get(archive).keySet()) {
+            boolean elsewhere = false;
+            for (int i = 0; i < NUM_ARCHIVES; i++) {
+                elsewhere |= i != archive && offsets.get(i).containsKey(title);
+            }
+            if (!elsewhere) {
+                return title;
+            }
+        }
+        throw new AssertionError("no title only in archive " + archive);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DictionariesTest {
+
+    private static final byte[] FIRST = utf8("<p>A common opening sentence for articles. </p><ul><li>");
+    private static final byte[] SECOND = utf8("<table class=\"infobox\"><tr><th>Population</th><td>");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesDecodeWithTheirDictionary() throws IOException {
+        File file = folder.newFile("dictionaries.wiki");
+        Map<String, Long> offsets = write(file);
+
+        try (Wiki wiki = new Wiki(file)) {
+            for (Map.Entry<String, Long> e : offsets.entrySet()) {
+                assertEquals(article(e.getKey()), read(wiki.getInflatedEntry(e.getValue())));
+                assertEquals(article(e.getKey()), read(wiki.inflate(wiki.readEntryBytes(e.getValue()))));
+            }
+
+            // The zlib header has FDICT set only when a dictionary was used
+            assertTrue(hasPresetDictionary(wiki, offsets.get("First")));
+            assertTrue(hasPresetDictionary(wiki, offsets.get("Second")));
+            assertFalse(hasPresetDictionary(wiki, offsets.get("None")));
+
+            // The index is still found in front of the trailer
+            assertEquals((long) offsets.get("Second"), wiki.getEntryOffset("Second"));
+            assertEquals(List.of(Map.entry("First", offsets.get("First"))), TestWikis.queryAll(wiki, "Fi"));
+        }
+    }
+
+    @Test
+    public void locatedByTheTrailer() throws IOException {
+        File file = folder.newFile("dictionaries.wiki");
+        write(file);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(last, channel.size() - Integer.BYTES);
+            assertEquals(Dictionaries.MAGIC, last.getInt(0));
+
+            Dictionaries dictionaries = Dictionaries.read(channel);
+            assertEquals(2, dictionaries.size());
+            assertEquals(Dictionaries.TRAILER_SIZE, dictionaries.trailerSize());
+            assertArrayEquals(FIRST, dictionaries.get(Dictionaries.adler32(FIRST)));
+            assertArrayEquals(SECOND, dictionaries.get(Dictionaries.adler32(SECOND)));
+        }
+
+        // The entries end where the dictionaries start
+        try (Wiki wiki = new Wiki(file, false)) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                assertEquals(Dictionaries.read(channel).offset(), wiki.entriesEnd());
+            }
+            try {
+                wiki.readEntryBytes(wiki.entriesEnd());
+                fail("read an entry from the dictionaries");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void filesWithoutDictionaries() throws IOException {
+        File file = folder.newFile("plain.wiki");
+        Map<String, Long> offsets = TestWikis.write(file, 200, 12);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertSame(Dictionaries.NONE, Dictionaries.read(channel));
+        }
+        try (Wiki wiki = new Wiki(file)) {
+            String title = TestWikis.FIRST_TITLE;
+            assertEquals("<p>" + title + "</p>", read(wiki.getInflatedEntry(offsets.get(title))));
+        }
+    }
+
+    @Test
+    public void openedFromASnapshot() throws IOException {
+        File file = folder.newFile("dictionaries.wiki");
+        Map<String, Long> offsets = write(file);
+        try (Wiki wiki = new Wiki(file, false)) {
+            wiki.saveSnapshot();
+        }
+
+        try (Wiki wiki = new Wiki(file)) {
+            assertEquals(article("First"), read(wiki.getInflatedEntry(offsets.get("First"))));
+        }
+    }
+
+    @Test
+    public void unsupportedVersion() throws IOException {
+        File file = folder.newFile("dictionaries.wiki");
+        write(file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // The version is before the magic
+            raf.seek(raf.length() - Integer.BYTES * 2);
+            raf.write(Dictionaries.VERSION + 1);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Dictionaries.read(channel);
+            fail("read an unsupported version");
+        } catch (IOException expected) {
+        }
+
+        try {
+            new Wiki(file).close();
+            fail("opened an unsupported version");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void missingDictionary() throws IOException {
+        File file = folder.newFile("missing.wiki");
+        long offset;
+        try (WikiWriter writer = new WikiWriter(file)) {
+            writer.addDictionary(FIRST);
+            offset = writer.addCompressed("Missing", deflate(utf8(article("Missing")), SECOND));
+        }
+
+        try (Wiki wiki = new Wiki(file)) {
+            read(wiki.getInflatedEntry(offset));
+            fail("inflated without the dictionary");
+        } catch (ZipException e) {
+            assertNotEquals(-1, e.getMessage().indexOf("missing dictionary"));
+        }
+    }
+
+    /**
+     * Writes an entry with each dictionary, and one with none.
+     */
+    private static Map<String, Long> write(File file) throws IOException {
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        try (WikiWriter writer = new WikiWriter(file)) {
+            int first = writer.addDictionary(FIRST);
+            int second = writer.addDictionary(SECOND);
+            offsets.put("First", writer.add("First", utf8(article("First")), first));
+            offsets.put("Second", writer.add("Second", utf8(article("Second")), second));
+            offsets.put("None", writer.add("None", utf8(article("None")), -1));
+        }
+        return offsets;
+    }
+
+    private static boolean hasPresetDictionary(Wiki wiki, long offset) throws IOException {
+        byte[] entry = wiki.readEntryBytes(offset);
+        return (entry[1] & 0x20) != 0;
+    }
+
+    private static byte[] deflate(byte[] bytes, byte[] dictionary) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setDictionary(dictionary);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+                out.write(bytes);
+            }
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    // Shares text with both dictionaries
+    private static String article(String title) {
+        return "<p>A common opening sentence for articles. </p><ul><li>" + title +
+                "</li></ul><table class=\"infobox\"><tr><th>Population</th><td>1</td></tr></table>";
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
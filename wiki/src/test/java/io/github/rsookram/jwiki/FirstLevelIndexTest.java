@@ -0,0 +1,144 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class FirstLevelIndexTest {
+
+    private static final int KEY_LENGTH = FirstLevelIndex.KEY_LENGTH;
+
+    // Few enough chars that random queries often share a prefix with a key
+    private static final String ALPHABET = "abcdeあいう";
+
+    @Test
+    public void matchesLinearScanForRandomKeys() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 50; trial++) {
+            String[] keys = randomKeys(random, 1 + random.nextInt(200));
+            FirstLevelIndex index = indexOf(keys);
+
+            for (int i = 0; i < 2000; i++) {
+                String s = randomText(random, 1 + random.nextInt(6));
+                assertMatchesLinearScan(keys, index, s);
+            }
+            for (String key : keys) {
+                String unpadded = key.replace("\0", "");
+                assertMatchesLinearScan(keys, index, unpadded);
+                assertMatchesLinearScan(keys, index, unpadded + randomText(random, 1 + random.nextInt(3)));
+                assertMatchesLinearScan(keys, index, unpadded.substring(0, 1));
+            }
+        }
+    }
+
+    @Test
+    public void beforeFirstKey() {
+        FirstLevelIndex index = indexOf(new String[]{"bcde", "cdef"});
+
+        assertEquals(-1, index.getSlot("a"));
+        assertEquals(-1, index.getOffset("a"));
+        assertEquals(-1, index.getSlot("bbbbbb"));
+        assertEquals(-1, index.getOffset("bbbbbb"));
+    }
+
+    @Test
+    public void afterLastKey() {
+        FirstLevelIndex index = indexOf(new String[]{"bcde", "cdef"});
+
+        assertEquals(1, index.getSlot("z"));
+        assertEquals(offsetAt(1), index.getOffset("z"));
+        assertEquals(1, index.getSlot("cdefg"));
+        assertEquals(offsetAt(1), index.getOffset("cdefg"));
+    }
+
+    @Test
+    public void shortKeysArePadded() {
+        FirstLevelIndex index = indexOf(new String[]{"a\0\0\0", "ab\0\0", "abc\0", "abcd", "b\0\0\0"});
+
+        // A query which is a prefix of a padded key sorts before it, like it
+        // would before any longer key
+        assertEquals(-1, index.getSlot("a"));
+        assertEquals(0, index.getSlot("aa"));
+        assertEquals(1, index.getSlot("abb"));
+        assertEquals(2, index.getSlot("abca"));
+        assertEquals(3, index.getSlot("abcd"));
+        assertEquals(3, index.getSlot("abcz"));
+        assertEquals(4, index.getSlot("ba"));
+
+        for (String s : new String[]{"a", "aa", "ab", "abc", "abcd", "b", "bcd"}) {
+            assertMatchesLinearScan(new String[]{"a\0\0\0", "ab\0\0", "abc\0", "abcd", "b\0\0\0"}, index, s);
+        }
+    }
+
+    private static void assertMatchesLinearScan(String[] keys, FirstLevelIndex index, String s) {
+        int expected = linearSlot(keys, s);
+        assertEquals("slot of " + s + " in " + Arrays.toString(keys), expected, index.getSlot(s));
+        assertEquals("offset of " + s + " in " + Arrays.toString(keys),
+                expected < 0 ? -1 : offsetAt(expected), index.getOffset(s));
+    }
+
+    /**
+     * The linear scan which FirstLevelIndex used before it binary searched.
+     */
+    private static int linearSlot(String[] keys, String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < keys.length; i++) {
+            if (compareTo(keys[i], chars) > 0) {
+                return i - 1;
+            }
+        }
+        return keys.length - 1;
+    }
+
+    private static int compareTo(String key, char[] chars) {
+        for (int i = 0; i < Math.min(chars.length, KEY_LENGTH); i++) {
+            int cmp = key.charAt(i) - chars[i];
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return KEY_LENGTH - chars.length;
+    }
+
+    /**
+     * Returns sorted distinct keys, some shorter than KEY_LENGTH and padded
+     * with '\0' like wiki-builder does.
+     */
+    private static String[] randomKeys(Random random, int count) {
+        TreeSet<String> keys = new TreeSet<>();
+        while (keys.size() < count) {
+            StringBuilder key = new StringBuilder(randomText(random, 1 + random.nextInt(KEY_LENGTH)));
+            while (key.length() < KEY_LENGTH) {
+                key.append('\0');
+            }
+            keys.add(key.toString());
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static FirstLevelIndex indexOf(String[] keys) {
+        char[] keyChars = new char[keys.length * KEY_LENGTH];
+        int[] offsets = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i].getChars(0, KEY_LENGTH, keyChars, i * KEY_LENGTH);
+            offsets[i] = offsetAt(i);
+        }
+        return new FirstLevelIndex(keyChars, offsets);
+    }
+
+    private static int offsetAt(int slot) {
+        return slot * 100;
+    }
+}
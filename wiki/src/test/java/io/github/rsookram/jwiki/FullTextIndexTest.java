@@ -0,0 +1,153 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FullTextIndexTest {
+
+    private static final int PARALLELISM = 2;
+    private static final int DOCS_PER_SEGMENT = 8;
+    private static final int NUM_FILLERS = Wiki.QUERY_LIMIT + 8;
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+    private static FullTextIndex index;
+    private static Wiki singleWiki;
+    private static FullTextIndex singleIndex;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+        try {
+            File file = folder.newFile("segments.wiki");
+            offsets = write(file);
+            wiki = new Wiki(file);
+            index = FullTextIndex.open(wiki);
+            new FullTextIndexer(index, executor, PARALLELISM, DOCS_PER_SEGMENT).run();
+
+            File single = folder.newFile("single.wiki");
+            write(single);
+            singleWiki = new Wiki(single);
+            singleIndex = FullTextIndex.open(singleWiki);
+            new FullTextIndexer(singleIndex, executor, PARALLELISM).run();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        wiki.close();
+        singleWiki.close();
+    }
+
+    @Test
+    public void severalSegments() throws IOException {
+        assertTrue(index.isComplete());
+        assertEquals(offsets.size(), index.getNumIndexedDocs());
+        assertEquals((offsets.size() + DOCS_PER_SEGMENT - 1) / DOCS_PER_SEGMENT, index.getNumSegments());
+
+        // They're all found again when opening the index
+        FullTextIndex reopened = FullTextIndex.open(wiki);
+        assertEquals(index.getNumSegments(), reopened.getNumSegments());
+        assertTrue(reopened.isComplete());
+    }
+
+    @Test
+    public void bestMatchFirstAcrossSegments() {
+        // The matches are in different segments, and the one in the later
+        // segment has the term more often, in a shorter article
+        List<Map.Entry<String, Long>> expected = List.of(
+                Map.entry("Strong", offsets.get("Strong")),
+                Map.entry("Weak", offsets.get("Weak"))
+        );
+        assertEquals(expected, search(index, "Zebra"));
+        assertEquals(expected, search(singleIndex, "Zebra"));
+    }
+
+    @Test
+    public void limitedAcrossSegments() {
+        List<Map.Entry<String, Long>> results = search(index, "see here");
+        assertEquals(Wiki.QUERY_LIMIT, results.size());
+        for (Map.Entry<String, Long> result : results) {
+            assertTrue(result.getKey(), result.getKey().startsWith("Filler "));
+            assertEquals(offsets.get(result.getKey()), result.getValue());
+        }
+        assertEquals(results.size(), results.stream().map(Map.Entry::getKey).distinct().count());
+    }
+
+    @Test
+    public void noMatches() {
+        assertEquals(List.of(), search(index, "Zebra see"));
+        assertEquals(List.of(), search(index, "Giraffe"));
+
+        // Too short to have any bigrams
+        assertEquals(List.of(), search(index, "Z"));
+    }
+
+    @Test
+    public void hitsKeepTheBest() {
+        FullTextIndex.Hits hits = new FullTextIndex.Hits(3);
+        float[] scores = {1, 5, 3, 4, 2, 5};
+        for (int doc = 0; doc < scores.length; doc++) {
+            hits.offer(scores[doc], null, doc);
+        }
+
+        // Ties keep the one offered first
+        assertEquals(3, hits.size);
+        assertArrayEquals(new float[]{5, 5, 4}, hits.scores, 0);
+        assertArrayEquals(new int[]{1, 5, 3}, hits.docs);
+    }
+
+    /**
+     * Writes a wiki with a long article which mentions zebras once, then
+     * {@link #NUM_FILLERS} fillers which don't mention them, with a short
+     * article about zebras in the middle.
+     */
+    private static TreeMap<String, Long> write(File file) throws IOException {
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        try (WikiWriter writer = new WikiWriter(file)) {
+            offsets.put("Weak", writer.add("Weak", utf8(
+                    "<p>A zebra appeared once, in a long article about many other animals, plants, places " +
+                            "and people which goes on for quite a while.</p>"
+            )));
+            for (int i = 0; i < NUM_FILLERS; i++) {
+                if (i == NUM_FILLERS / 2) {
+                    offsets.put("Strong", writer.add("Strong", utf8("<p>Zebra, zebra, zebra.</p>")));
+                }
+                String title = "Filler " + i;
+                offsets.put(title, writer.add(title, utf8("<p>Nothing to see here.</p>")));
+            }
+        }
+        return offsets;
+    }
+
+    private static List<Map.Entry<String, Long>> search(FullTextIndex index, String query) {
+        SearchResults results = new SearchResults();
+        index.search(query, results);
+        return TestWikis.entries(results);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FullTextIndexerTest {
+
+    private static final int PARALLELISM = 2;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+
+    private Wiki wiki;
+    private FullTextIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        File file = folder.newFile("indexer.wiki");
+        TestWikis.write(file, 300, 8);
+        wiki = new Wiki(file);
+        index = FullTextIndex.open(wiki);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        wiki.close();
+    }
+
+    @Test
+    public void runsToCompletion() throws IOException {
+        assertTrue(new FullTextIndexer(index, executor, PARALLELISM).run());
+        assertTrue(index.isComplete());
+
+        // Every entry has a distinct title
+        assertEquals(FullTextIndexer.Documents.read(wiki).size(), index.getNumIndexedDocs());
+        assertTrue(FullTextIndex.open(wiki).isComplete());
+    }
+
+    @Test
+    public void stopped() throws IOException {
+        FullTextIndexer indexer = new FullTextIndexer(index, executor, PARALLELISM);
+        indexer.stop();
+
+        assertFalse(indexer.run());
+        assertEquals(0, index.getNumIndexedDocs());
+    }
+
+    @Test
+    public void interruptedWhileWaitingForABatch() throws IOException {
+        FullTextIndexer indexer = new FullTextIndexer(index, executor, PARALLELISM);
+
+        Thread.currentThread().interrupt();
+        boolean complete = indexer.run();
+        assertTrue(Thread.interrupted());
+        assertFalse(complete);
+
+        // The workers weren't interrupted, so the wiki's channel is still open
+        long offset = wiki.getEntryOffset(TestWikis.FIRST_TITLE);
+        assertTrue(wiki.readEntryBytes(offset).length > 0);
+    }
+
+    @Test
+    public void unreadableEntryAbortsTheSegment() throws IOException {
+        File file = folder.newFile("unreadable.wiki");
+        try (WikiWriter writer = new WikiWriter(file)) {
+            writer.add("Readable", "<p>Readable</p>".getBytes(StandardCharsets.UTF_8));
+            writer.addCompressed("Unreadable", new byte[]{1, 2, 3, 4});
+        }
+
+        try (Wiki unreadable = new Wiki(file)) {
+            FullTextIndex unreadableIndex = FullTextIndex.open(unreadable);
+            try {
+                new FullTextIndexer(unreadableIndex, executor, PARALLELISM).run();
+                fail("indexed an unreadable entry");
+            } catch (IOException expected) {
+            }
+
+            assertEquals(0, unreadableIndex.getNumIndexedDocs());
+            assertFalse(FullTextSegment.fileFor(unreadable, 0).exists());
+        }
+    }
+
+    @Test
+    public void executorShutDownWithoutStopping() {
+        executor.shutdown();
+        try {
+            new FullTextIndexer(index, executor, PARALLELISM).run();
+            fail("indexed without an executor");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FullTextTokenizerTest {
+
+    @Test
+    public void markupIsDropped() {
+        assertEquals(" Tokyo  is  big ", textOf("<p>Tokyo <b>is</b> big</p>"));
+        assertEquals(" a  b", textOf("<script>var x = '<p>';</script>a<style>p { }</style> b"));
+        assertEquals("AT T", textOf("AT&amp;T"));
+
+        // An unclosed tag ends the text
+        assertEquals("text ", textOf("text <p"));
+    }
+
+    @Test
+    public void bigramsInOrderWithRepeats() {
+        assertArrayEquals(new int[]{bigram('a', 'b'), bigram('b', 'a'), bigram('a', 'b')}, FullTextTokenizer.bigrams("abab"));
+
+        // Japanese is split without needing spaces between words
+        assertArrayEquals(new int[]{bigram('東', '京'), bigram('京', '都')}, FullTextTokenizer.bigrams("東京都"));
+    }
+
+    @Test
+    public void bigramsStayWithinRunsOfLettersAndDigits() {
+        assertArrayEquals(
+                new int[]{bigram('a', 'b'), bigram('c', '1'), bigram('1', '2')},
+                FullTextTokenizer.bigrams("ab c12-x")
+        );
+        assertArrayEquals(new int[0], FullTextTokenizer.bigrams("a b c"));
+        assertArrayEquals(new int[0], FullTextTokenizer.bigrams("a"));
+        assertArrayEquals(new int[0], FullTextTokenizer.bigrams(""));
+    }
+
+    @Test
+    public void queryTermsAreNormalizedDistinctAndSorted() {
+        assertArrayEquals(new int[]{bigram('a', 'b'), bigram('b', 'a')}, FullTextTokenizer.queryTerms("ABAB"));
+
+        // Katakana matches hiragana in articles
+        assertArrayEquals(FullTextTokenizer.queryTerms("とうきょう"), FullTextTokenizer.queryTerms("トウキョウ"));
+
+        assertArrayEquals(new int[0], FullTextTokenizer.queryTerms("a"));
+    }
+
+    private static String textOf(String html) {
+        return FullTextTokenizer.textOf(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int bigram(char first, char second) {
+        return first << 16 | second;
+    }
+}
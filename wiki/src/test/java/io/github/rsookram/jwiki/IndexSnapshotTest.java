@@ -0,0 +1,115 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = folder.newFile("snapshot.wiki");
+        TestWikis.write(file, 500, 7);
+
+        FirstLevelIndex firstLevelIndex;
+        try (Wiki wiki = new Wiki(file, false)) {
+            firstLevelIndex = wiki.getFirstLevelIndex();
+        }
+
+        new IndexSnapshot(1L << 33, 12345, firstLevelIndex).save(file);
+
+        IndexSnapshot loaded = IndexSnapshot.load(file);
+        assertNotNull(loaded);
+        assertEquals(1L << 33, loaded.secondLevelIndexOffset);
+        assertEquals(12345, loaded.secondLevelIndexLength);
+        assertArrayEquals(firstLevelIndex.keyChars(), loaded.firstLevelIndex.keyChars());
+        assertArrayEquals(firstLevelIndex.offsets(), loaded.firstLevelIndex.offsets());
+    }
+
+    @Test
+    public void opensFromTheSavedSnapshot() throws IOException {
+        File file = folder.newFile("snapshot.wiki");
+        TreeMap<String, Long> offsets = TestWikis.write(file, 500, 7);
+
+        try (Wiki wiki = new Wiki(file, false)) {
+            wiki.saveSnapshot();
+        }
+        assertNotNull(IndexSnapshot.load(file));
+
+        try (Wiki wiki = new Wiki(file)) {
+            for (String prefix : new String[]{"A", "L", TestWikis.SHARED_PREFIX, TestWikis.FIRST_TITLE, "zz"}) {
+                assertEquals(prefix, TestWikis.matches(offsets, prefix), TestWikis.queryAll(wiki, prefix));
+            }
+        }
+    }
+
+    @Test
+    public void rejectedAfterTheWikiIsModified() throws IOException {
+        File file = folder.newFile("snapshot.wiki");
+        TestWikis.write(file, 500, 7);
+        saveSnapshot(file);
+
+        assertNotNull(IndexSnapshot.load(file));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        assertNull(IndexSnapshot.load(file));
+
+        // The wiki still opens, from the trailer
+        try (Wiki wiki = new Wiki(file)) {
+            assertEquals(TestWikis.FIRST_TITLE, firstTitle(wiki));
+        }
+    }
+
+    @Test
+    public void rejectedAfterTheWikiChangesLength() throws IOException {
+        File file = folder.newFile("snapshot.wiki");
+        TestWikis.write(file, 500, 7);
+        saveSnapshot(file);
+
+        long lastModified = file.lastModified();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(0);
+        }
+        assertTrue(file.setLastModified(lastModified));
+
+        assertNull(IndexSnapshot.load(file));
+    }
+
+    @Test
+    public void rejectedWhenTruncated() throws IOException {
+        File file = folder.newFile("snapshot.wiki");
+        TestWikis.write(file, 500, 7);
+        saveSnapshot(file);
+
+        try (RandomAccessFile snapshot = new RandomAccessFile(file.getPath() + ".snapshot", "rw")) {
+            snapshot.setLength(snapshot.length() - 1);
+        }
+        assertNull(IndexSnapshot.load(file));
+    }
+
+    private static void saveSnapshot(File file) throws IOException {
+        try (Wiki wiki = new Wiki(file, false)) {
+            wiki.saveSnapshot();
+        }
+    }
+
+    private static String firstTitle(Wiki wiki) {
+        SearchResults results = new SearchResults();
+        wiki.query("A", new Wiki.Cursor(), new Wiki.Cursor(), results);
+        return TestWikis.entries(results).get(0).getKey();
+    }
+}
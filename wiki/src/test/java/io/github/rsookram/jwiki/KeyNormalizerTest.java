@@ -0,0 +1,42 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyNormalizerTest {
+
+    @Test
+    public void katakanaBecomesHiragana() {
+        assertEquals("とうきょう", KeyNormalizer.normalize("トウキョウ"));
+        assertEquals("ゔぁゕゖ", KeyNormalizer.normalize("ヴァヵヶ"));
+    }
+
+    @Test
+    public void halfWidthKatakana() {
+        assertEquals("とうきょう", KeyNormalizer.normalize("ﾄｳｷｮｳ"));
+
+        // The voiced sound mark is a separate char in half-width
+        assertEquals("がぱ", KeyNormalizer.normalize("ｶﾞﾊﾟ"));
+    }
+
+    @Test
+    public void fullWidthLatin() {
+        assertEquals("tokyo 2020", KeyNormalizer.normalize("ＴＯＫＹＯ　２０２０"));
+    }
+
+    @Test
+    public void caseIsFolded() {
+        assertEquals("tokyo", KeyNormalizer.normalize("Tokyo"));
+        assertEquals("tokyo", KeyNormalizer.normalize("TOKYO"));
+    }
+
+    @Test
+    public void othersAreUnchanged() {
+        // The long vowel mark and middle dot are outside of the kana which
+        // have a hiragana form
+        assertEquals("東京たわー・", KeyNormalizer.normalize("東京タワー・"));
+        assertEquals("とうきょう", KeyNormalizer.normalize("とうきょう"));
+        assertEquals("", KeyNormalizer.normalize(""));
+    }
+}
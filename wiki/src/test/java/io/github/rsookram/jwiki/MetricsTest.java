@@ -0,0 +1,117 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+    private static Wiki trieWiki;
+
+    private final List<String> sections = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        File file = folder.newFile("metrics.wiki");
+        offsets = TestWikis.write(file, 500, 9);
+        wiki = new Wiki(file);
+        trieWiki = new Wiki(file);
+        trieWiki.setTitleTrie(TitleTrie.openOrBuild(trieWiki));
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        wiki.close();
+        trieWiki.close();
+    }
+
+    @Before
+    public void setUp() {
+        Metrics.reset();
+        Metrics.setTracer(new Metrics.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                sections.add("begin " + name);
+            }
+
+            @Override
+            public void endSection() {
+                sections.add("end");
+            }
+        });
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.setTracer(null);
+        Metrics.reset();
+    }
+
+    @Test
+    public void entriesAreTimedUntilClosed() throws IOException {
+        InputStream in = wiki.getInflatedEntry(offsets.get(TestWikis.FIRST_TITLE));
+
+        // The trace section only covers opening, so that it's balanced on
+        // this thread
+        assertEquals(List.of("begin Wiki.getEntry", "end"), sections);
+        assertEquals(0, Metrics.ENTRY.count());
+
+        in.readAllBytes();
+        in.close();
+        assertEquals(1, Metrics.ENTRY.count());
+        assertTrue(Metrics.ENTRY.sum() > 0);
+    }
+
+    @Test
+    public void failedOpensAreStillRecorded() {
+        try {
+            wiki.getEntry(-1);
+        } catch (RuntimeException expected) {
+        }
+
+        assertEquals(1, Metrics.ENTRY.count());
+        assertEquals(List.of("begin Wiki.getEntry", "end"), sections);
+    }
+
+    @Test
+    public void rowsScanned() {
+        SearchResults results = new SearchResults();
+        wiki.query(TestWikis.SHARED_PREFIX, new Wiki.Cursor(), results);
+
+        assertEquals(1, Metrics.ROWS_SCANNED.count());
+        assertTrue(Metrics.ROWS_SCANNED.max() >= Wiki.QUERY_LIMIT);
+    }
+
+    @Test
+    public void trieNodesVisited() {
+        SearchResults results = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+        trieWiki.query(TestWikis.SHARED_PREFIX, new Wiki.Cursor(), next, results);
+        trieWiki.queryNext(TestWikis.SHARED_PREFIX, next, results);
+
+        // Every result is at a node of its own
+        assertEquals(2, Metrics.ROWS_SCANNED.count());
+        assertTrue(Metrics.ROWS_SCANNED.sum() >= 2 * Wiki.QUERY_LIMIT);
+    }
+}
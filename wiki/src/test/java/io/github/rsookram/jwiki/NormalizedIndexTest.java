@@ -0,0 +1,130 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizedIndexTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    // Ways of writing the same name, and some which are close to it
+    private static final String[] TOKYO_TITLES = {
+            "トウキョウ", "とうきょう駅", "ﾄｳｷｮｳﾀﾜｰ", "東京", "Tokyo", "ＴＯＫＹＯ", "tokyo dome", "トウカイ",
+    };
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+    private static NormalizedIndex index;
+
+    private static Wiki tokyoWiki;
+    private static NormalizedIndex tokyoIndex;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        File file = folder.newFile("normalized.wiki");
+        offsets = TestWikis.write(file, 3000, 6);
+        wiki = new Wiki(file);
+        index = NormalizedIndex.openOrBuild(wiki, TitleTable.openOrBuild(wiki));
+
+        File tokyoFile = folder.newFile("tokyo.wiki");
+        try (WikiWriter writer = new WikiWriter(tokyoFile)) {
+            for (String title : TOKYO_TITLES) {
+                writer.add(title, title.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        tokyoWiki = new Wiki(tokyoFile);
+        tokyoIndex = NormalizedIndex.openOrBuild(tokyoWiki, TitleTable.openOrBuild(tokyoWiki));
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        wiki.close();
+        tokyoWiki.close();
+    }
+
+    @Test
+    public void findsKatakanaForHiragana() {
+        // In order of their normalized forms
+        assertEquals(List.of("トウキョウ", "ﾄｳｷｮｳﾀﾜｰ", "とうきょう駅"), titles(tokyoIndex, "とうきょう"));
+        assertEquals(List.of("トウキョウ", "ﾄｳｷｮｳﾀﾜｰ", "とうきょう駅"), titles(tokyoIndex, normalize("トウキョウ")));
+        assertEquals(List.of("ﾄｳｷｮｳﾀﾜｰ"), titles(tokyoIndex, normalize("トウキョウタ")));
+        assertEquals(List.of("トウカイ", "トウキョウ", "ﾄｳｷｮｳﾀﾜｰ", "とうきょう駅"), titles(tokyoIndex, "とう"));
+    }
+
+    @Test
+    public void findsAnyWidthAndCase() {
+        assertEquals(List.of("Tokyo", "ＴＯＫＹＯ", "tokyo dome"), titles(tokyoIndex, normalize("TOKYO")));
+        assertEquals(List.of("tokyo dome"), titles(tokyoIndex, normalize("Tokyo D")));
+        assertTrue(titles(tokyoIndex, "とうきょうえき").isEmpty());
+    }
+
+    @Test
+    public void matchesBruteForceScan() {
+        Random random = new Random(6);
+        String[] titles = offsets.keySet().toArray(new String[0]);
+        for (int i = 0; i < 1000; i++) {
+            String title = titles[random.nextInt(titles.length)];
+            assertSearchMatches(normalize(title.substring(0, 1 + random.nextInt(Math.min(title.length(), 4)))));
+        }
+
+        // Prefixes with more than a page of matches
+        assertSearchMatches(normalize(TestWikis.SHARED_PREFIX));
+        assertSearchMatches("ぁ");
+        assertSearchMatches(normalize("ァ"));
+    }
+
+    @Test
+    public void reopensTheSameIndex() throws IOException {
+        NormalizedIndex reopened = NormalizedIndex.openOrBuild(tokyoWiki, TitleTable.openOrBuild(tokyoWiki));
+        assertEquals(titles(tokyoIndex, "とう"), titles(reopened, "とう"));
+    }
+
+    private static void assertSearchMatches(String normalizedPrefix) {
+        List<Map.Entry<String, Long>> expected = new ArrayList<>();
+        for (Map.Entry<String, Long> e : offsets.entrySet()) {
+            if (normalize(e.getKey()).startsWith(normalizedPrefix)) {
+                expected.add(e);
+            }
+        }
+        // By normalized key, then by title, which is the order of ordinals
+        expected.sort(Comparator.comparing((Map.Entry<String, Long> e) -> normalize(e.getKey()))
+                .thenComparing(Map.Entry::getKey));
+
+        SearchResults results = new SearchResults();
+        index.search(normalizedPrefix, results);
+        assertEquals(normalizedPrefix, expected.subList(0, Math.min(expected.size(), Wiki.QUERY_LIMIT)),
+                TestWikis.entries(results));
+    }
+
+    private static List<String> titles(NormalizedIndex index, String normalizedPrefix) {
+        SearchResults results = new SearchResults();
+        index.search(normalizedPrefix, results);
+
+        List<String> titles = new ArrayList<>();
+        for (Map.Entry<String, Long> e : TestWikis.entries(results)) {
+            titles.add(e.getKey());
+        }
+        return titles;
+    }
+
+    private static String normalize(String s) {
+        return KeyNormalizer.normalize(s);
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes small wikis for tests, and reads back every page of a query.
+ */
+final class TestWikis {
+
+    // Titles which share a long prefix, so that there are several full pages
+    // of results for it, and prefixes of it end partway through a TitleTrie
+    // label
+    static final String SHARED_PREFIX = "Long title ";
+    static final int NUM_SHARED = Wiki.QUERY_LIMIT * 4;
+
+    // Sorts first, and is shorter than a first level key
+    static final String FIRST_TITLE = "AB";
+
+    private TestWikis() {
+    }
+
+    /**
+     * Writes a wiki with the titles of a {@link SyntheticWiki}, plus
+     * {@link #NUM_SHARED} which start with {@link #SHARED_PREFIX} and
+     * {@link #FIRST_TITLE}, in small blocks. Returns the entry offset of each
+     * title.
+     */
+    static TreeMap<String, Long> write(File file, int numTitles, long seed) throws IOException {
+        List<String> titles = new ArrayList<>(new SyntheticWiki(numTitles, seed).titles());
+        for (int i = 0; i < NUM_SHARED; i++) {
+            titles.add(SHARED_PREFIX + i);
+        }
+        titles.add(FIRST_TITLE);
+
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        try (WikiWriter writer = new WikiWriter(file, 256)) {
+            for (String title : titles) {
+                byte[] html = ("<p>" + title + "</p>").getBytes(StandardCharsets.UTF_8);
+                offsets.put(title, writer.add(title, html));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the titles in offsets which start with prefix, in order, with
+     * their entry offsets.
+     */
+    static List<Map.Entry<String, Long>> matches(TreeMap<String, Long> offsets, String prefix) {
+        List<Map.Entry<String, Long>> matches = new ArrayList<>();
+        for (Map.Entry<String, Long> e : offsets.tailMap(prefix, true).entrySet()) {
+            if (!e.getKey().startsWith(prefix)) {
+                break;
+            }
+            matches.add(e);
+        }
+        return matches;
+    }
+
+    /**
+     * Reads every page of results for prefix with
+     * {@link Wiki#query(String, Wiki.Cursor, Wiki.Cursor, SearchResults)} and
+     * {@link Wiki#queryNext(String, Wiki.Cursor, SearchResults)}. Only the
+     * last page may be short.
+     */
+    static List<Map.Entry<String, Long>> queryAll(Wiki wiki, String prefix) {
+        List<Map.Entry<String, Long>> results = new ArrayList<>();
+        SearchResults page = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+
+        wiki.query(prefix, new Wiki.Cursor(), next, page);
+        while (true) {
+            results.addAll(entries(page));
+            if (page.size() < Wiki.QUERY_LIMIT) {
+                return results;
+            }
+            wiki.queryNext(prefix, next, page);
+        }
+    }
+
+    /**
+     * Returns the keys and offsets in results, in order.
+     */
+    static List<Map.Entry<String, Long>> entries(SearchResults results) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            String key = new String(results.keyChars(), results.keyStart(i), results.keyLength(i));
+            entries.add(Map.entry(key, results.getOffset(i)));
+        }
+        return entries;
+    }
+}
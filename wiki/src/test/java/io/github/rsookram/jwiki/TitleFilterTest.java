@@ -0,0 +1,95 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TitleFilterTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+    private static TitleFilter filter;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        File file = folder.newFile("filter.wiki");
+        offsets = TestWikis.write(file, 5000, 2);
+        wiki = new Wiki(file);
+        filter = TitleFilter.openOrBuild(wiki);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        wiki.close();
+    }
+
+    @After
+    public void removeFilter() {
+        wiki.setTitleFilter(null);
+    }
+
+    @Test
+    public void noFalseNegatives() {
+        for (String title : offsets.keySet()) {
+            assertTrue(title, filter.mightContain(title));
+        }
+    }
+
+    @Test
+    public void fewFalsePositives() {
+        int falsePositives = 0;
+        for (String title : offsets.keySet()) {
+            if (filter.mightContain(title + '\u0001')) {
+                falsePositives++;
+            }
+        }
+
+        // About 1% is expected, before rounding the size up
+        assertTrue("false positives " + falsePositives, falsePositives < offsets.size() * 0.03);
+    }
+
+    @Test
+    public void lookupsAreUnchanged() {
+        List<String> names = new ArrayList<>();
+        for (String title : offsets.keySet()) {
+            names.add(title);
+            names.add(title + '\u0001');
+            names.add(title.substring(0, title.length() - 1) + '\uffff');
+        }
+
+        long[] expected = new long[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            expected[i] = offsets.getOrDefault(names.get(i), -1L);
+        }
+
+        wiki.setTitleFilter(filter);
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(names.get(i), expected[i], wiki.getEntryOffset(names.get(i)));
+        }
+        assertArrayEquals(expected, wiki.getEntryOffsets(names));
+    }
+
+    @Test
+    public void reopensTheSameFilter() throws IOException {
+        TitleFilter reopened = TitleFilter.openOrBuild(wiki);
+        for (String title : offsets.keySet()) {
+            assertEquals(filter.mightContain(title + '\u0001'), reopened.mightContain(title + '\u0001'));
+        }
+    }
+}
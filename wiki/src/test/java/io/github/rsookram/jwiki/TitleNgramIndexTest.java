@@ -0,0 +1,128 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TitleNgramIndexTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+    private static TitleNgramIndex index;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        File file = folder.newFile("ngram.wiki");
+        offsets = TestWikis.write(file, 3000, 5);
+        wiki = new Wiki(file);
+        index = TitleNgramIndex.openOrBuild(wiki, TitleTable.openOrBuild(wiki));
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        wiki.close();
+    }
+
+    @Test
+    public void matchesBruteForceScan() {
+        Random random = new Random(5);
+        String[] titles = offsets.keySet().toArray(new String[0]);
+        for (int i = 0; i < 2000; i++) {
+            String title = titles[random.nextInt(titles.length)];
+            if (title.length() < 2) {
+                continue;
+            }
+
+            int length = 2 + random.nextInt(Math.min(title.length(), 6) - 1);
+            int start = random.nextInt(title.length() - length + 1);
+            assertSearchMatches(title.substring(start, start + length));
+        }
+
+        // Pairs of chars which appear in titles, but mostly not together
+        for (int i = 0; i < 500; i++) {
+            String a = titles[random.nextInt(titles.length)];
+            String b = titles[random.nextInt(titles.length)];
+            assertSearchMatches("" + a.charAt(random.nextInt(a.length())) + b.charAt(random.nextInt(b.length())));
+        }
+    }
+
+    @Test
+    public void bigramsWhichArentConsecutive() {
+        // "ti" and "it" are both in "title", but "titi" isn't
+        assertFalse(search("ti").isEmpty());
+        assertFalse(search("it").isEmpty());
+        assertTrue(search("titi").isEmpty());
+    }
+
+    @Test
+    public void repeatedBigrams() {
+        assertSearchMatches("itle ti");
+        assertSearchMatches("ぁぁぁ");
+    }
+
+    @Test
+    public void firstPageOfManyMatches() {
+        String s = TestWikis.SHARED_PREFIX.substring(1, 6);
+        assertTrue(contains(s).size() > Wiki.QUERY_LIMIT);
+        assertSearchMatches(s);
+    }
+
+    @Test
+    public void tooShort() {
+        assertTrue(search("L").isEmpty());
+    }
+
+    @Test
+    public void noMatches() {
+        assertTrue(search("zz").isEmpty());
+    }
+
+    @Test
+    public void reopensTheSameIndex() throws IOException {
+        TitleNgramIndex reopened = TitleNgramIndex.openOrBuild(wiki, TitleTable.openOrBuild(wiki));
+        SearchResults results = new SearchResults();
+        reopened.search("itle", results);
+        assertEquals(search("itle"), TestWikis.entries(results));
+    }
+
+    private static void assertSearchMatches(String s) {
+        List<Map.Entry<String, Long>> expected = contains(s);
+        assertEquals(s, expected.subList(0, Math.min(expected.size(), Wiki.QUERY_LIMIT)), search(s));
+    }
+
+    private static List<Map.Entry<String, Long>> search(String s) {
+        SearchResults results = new SearchResults();
+        index.search(s, results);
+        return TestWikis.entries(results);
+    }
+
+    /**
+     * The titles which contain s, in sorted order.
+     */
+    private static List<Map.Entry<String, Long>> contains(String s) {
+        List<Map.Entry<String, Long>> matches = new ArrayList<>();
+        for (Map.Entry<String, Long> e : offsets.entrySet()) {
+            if (e.getKey().contains(s)) {
+                matches.add(e);
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TitleTrieTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static File file;
+    private static TreeMap<String, Long> offsets;
+
+    // The same file, read through the second level index and the trie
+    private static Wiki indexWiki;
+    private static Wiki trieWiki;
+    private static TitleTrie trie;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        file = folder.newFile("trie.wiki");
+        offsets = TestWikis.write(file, 5000, 3);
+
+        indexWiki = new Wiki(file);
+        trieWiki = new Wiki(file);
+        trie = TitleTrie.openOrBuild(trieWiki);
+        trieWiki.setTitleTrie(trie);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        indexWiki.close();
+        trieWiki.close();
+    }
+
+    @Test
+    public void containsEveryTitle() {
+        assertEquals(offsets.size(), trie.size());
+        assertTrue(trie.sizeInBytes() > 0);
+    }
+
+    @Test
+    public void exactHitsAndMisses() {
+        for (String name : names()) {
+            long expected = offsets.getOrDefault(name, -1L);
+            assertEquals(name, expected, indexWiki.getEntryOffset(name));
+            assertEquals(name, expected, trieWiki.getEntryOffset(name));
+        }
+    }
+
+    @Test
+    public void batches() {
+        List<String> names = names();
+        assertArrayEquals(indexWiki.getEntryOffsets(names), trieWiki.getEntryOffsets(names));
+
+        // Smaller batches, like the links on a page
+        for (int i = 0; i + 256 <= names.size(); i += 997) {
+            List<String> batch = names.subList(i, i + 256);
+            assertArrayEquals(indexWiki.getEntryOffsets(batch), trieWiki.getEntryOffsets(batch));
+        }
+    }
+
+    @Test
+    public void pagesMatchTheIndex() {
+        TreeSet<String> prefixes = new TreeSet<>();
+        for (String title : offsets.keySet()) {
+            prefixes.add(title.substring(0, 1));
+            prefixes.add(title.substring(0, Math.min(2, title.length())));
+        }
+        prefixes.add(TestWikis.SHARED_PREFIX);
+        prefixes.add(TestWikis.SHARED_PREFIX + "1");
+
+        for (String prefix : prefixes) {
+            assertPagesMatch(prefix);
+        }
+    }
+
+    @Test
+    public void prefixEndingMidLabel() {
+        // Every title starting with "L" shares SHARED_PREFIX, so these all
+        // end partway through the label of a single node
+        for (int length = 1; length < TestWikis.SHARED_PREFIX.length(); length++) {
+            String prefix = TestWikis.SHARED_PREFIX.substring(0, length);
+            assertEquals(TestWikis.NUM_SHARED, TestWikis.matches(offsets, prefix).size());
+            assertPagesMatch(prefix);
+            assertEquals(-1, trieWiki.getEntryOffset(prefix));
+        }
+
+        // Diverges from the label partway through it
+        assertPagesMatch("Long tX");
+        assertEquals(-1, trieWiki.getEntryOffset("Long tX"));
+    }
+
+    @Test
+    public void wholeTitles() {
+        for (String title : offsets.keySet()) {
+            assertPagesMatch(title);
+        }
+    }
+
+    @Test
+    public void noMatches() {
+        SearchResults results = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+
+        trieWiki.query("zzz", new Wiki.Cursor(), next, results);
+        assertEquals(0, results.size());
+
+        trieWiki.queryNext("zzz", next, results);
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void prefixLongerThanAnyTitle() {
+        String prefix = TestWikis.SHARED_PREFIX + "1".repeat(Wiki.MAX_KEY_LENGTH);
+        SearchResults results = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+
+        trieWiki.query(prefix, new Wiki.Cursor(), next, results);
+        assertEquals(0, results.size());
+        assertFalse(next.isSet());
+    }
+
+    @Test
+    public void pagingContinuesAfterSwitchingEngines() throws IOException {
+        String prefix = TestWikis.SHARED_PREFIX;
+        List<Map.Entry<String, Long>> expected = TestWikis.matches(offsets, prefix);
+
+        try (Wiki wiki = new Wiki(file)) {
+            // A cursor set by the index keeps working once the trie is set
+            SearchResults page = new SearchResults();
+            Wiki.Cursor next = new Wiki.Cursor();
+            wiki.query(prefix, new Wiki.Cursor(), next, page);
+            wiki.setTitleTrie(trie);
+            wiki.queryNext(prefix, next, page);
+            assertEquals(expected.subList(Wiki.QUERY_LIMIT, Wiki.QUERY_LIMIT * 2), TestWikis.entries(page));
+
+            // And one set by the trie keeps working with it
+            wiki.queryNext(prefix, next, page);
+            assertEquals(expected.subList(Wiki.QUERY_LIMIT * 2, Wiki.QUERY_LIMIT * 3), TestWikis.entries(page));
+        }
+    }
+
+    @Test
+    public void incrementalSearch() {
+        String title = TestWikis.SHARED_PREFIX + "42";
+        IncrementalSearch search = new IncrementalSearch(trieWiki);
+        SearchResults results = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+
+        // Typed, then deleted
+        for (int length = 1; length <= title.length(); length++) {
+            assertIncrementalMatches(search, title.substring(0, length), results, next);
+        }
+        for (int length = title.length() - 1; length >= 1; length--) {
+            assertIncrementalMatches(search, title.substring(0, length), results, next);
+        }
+    }
+
+    @Test
+    public void reopensTheSameTrie() throws IOException {
+        TitleTrie reopened = TitleTrie.openOrBuild(indexWiki);
+        assertEquals(trie.sizeInBytes(), reopened.sizeInBytes());
+        for (Map.Entry<String, Long> e : offsets.entrySet()) {
+            assertEquals((long) e.getValue(), reopened.find(e.getKey()));
+        }
+    }
+
+    private static void assertIncrementalMatches(IncrementalSearch search, String prefix, SearchResults results, Wiki.Cursor next) {
+        search.query(prefix, results, next);
+
+        List<Map.Entry<String, Long>> expected = TestWikis.matches(offsets, prefix);
+        assertEquals(prefix, expected.subList(0, Math.min(expected.size(), Wiki.QUERY_LIMIT)), TestWikis.entries(results));
+
+        if (expected.size() > Wiki.QUERY_LIMIT) {
+            trieWiki.queryNext(prefix, next, results);
+            int end = Math.min(expected.size(), Wiki.QUERY_LIMIT * 2);
+            assertEquals(prefix, expected.subList(Wiki.QUERY_LIMIT, end), TestWikis.entries(results));
+        }
+    }
+
+    private static void assertPagesMatch(String prefix) {
+        List<Map.Entry<String, Long>> expected = TestWikis.matches(offsets, prefix);
+        assertEquals(prefix, expected, TestWikis.queryAll(indexWiki, prefix));
+        assertEquals(prefix, expected, TestWikis.queryAll(trieWiki, prefix));
+    }
+
+    /**
+     * Titles, and names which are close to titles without being one.
+     */
+    private static List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (String title : offsets.keySet()) {
+            names.add(title);
+            names.add(title + '\u0001');
+            names.add(title.substring(0, title.length() - 1));
+            names.add(title.substring(0, title.length() - 1) + '\uffff');
+        }
+        names.remove("");
+        return names;
+    }
+}
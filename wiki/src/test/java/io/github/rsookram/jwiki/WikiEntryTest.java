@@ -0,0 +1,86 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WikiEntryTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        File file = folder.newFile("entry.wiki");
+        offsets = TestWikis.write(file, 500, 4);
+        wiki = new Wiki(file);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        wiki.close();
+    }
+
+    @Test
+    public void readsEveryEntry() throws IOException {
+        for (Map.Entry<String, Long> e : offsets.entrySet()) {
+            assertEquals(html(e.getKey()), read(wiki.getInflatedEntry(e.getValue())));
+            assertEquals(html(e.getKey()), read(wiki.inflate(wiki.readEntryBytes(e.getValue()))));
+        }
+    }
+
+    @Test
+    public void prefetchedEntriesAreCached() throws IOException {
+        long offset = offsets.get(TestWikis.FIRST_TITLE);
+        wiki.getEntryCache().evictAll();
+
+        assertTrue(wiki.prefetchEntry(offset) > 0);
+        assertTrue(wiki.getEntryCache().contains(offset));
+        assertEquals(0, wiki.prefetchEntry(offset));
+
+        assertEquals(html(TestWikis.FIRST_TITLE), read(wiki.getInflatedEntry(offset)));
+    }
+
+    @Test
+    public void offsetsOutsideTheEntries() {
+        for (long offset : new long[]{-1, wiki.entriesEnd() - 1, wiki.entriesEnd()}) {
+            try {
+                wiki.readEntryBytes(offset);
+                fail("read an entry at " + offset);
+            } catch (IOException expected) {
+            }
+
+            try {
+                wiki.prefetchEntry(offset);
+                fail("prefetched an entry at " + offset);
+            } catch (RuntimeException expected) {
+            }
+        }
+    }
+
+    private static String html(String title) {
+        return "<p>" + title + "</p>";
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
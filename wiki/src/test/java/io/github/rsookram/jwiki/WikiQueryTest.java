@@ -0,0 +1,148 @@
+package io.github.rsookram.jwiki;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WikiQueryTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static TreeMap<String, Long> offsets;
+    private static Wiki wiki;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        File file = folder.newFile("query.wiki");
+        offsets = TestWikis.write(file, 3000, 1);
+        wiki = new Wiki(file);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        wiki.close();
+    }
+
+    @Test
+    public void pagesCoverEveryMatchInOrder() {
+        TreeSet<String> prefixes = new TreeSet<>();
+        for (String title : offsets.keySet()) {
+            prefixes.add(title.substring(0, 1));
+            prefixes.add(title.substring(0, Math.min(2, title.length())));
+        }
+
+        for (String prefix : prefixes) {
+            assertEquals(prefix, TestWikis.matches(offsets, prefix), TestWikis.queryAll(wiki, prefix));
+        }
+    }
+
+    @Test
+    public void pagesAcrossBlocks() {
+        // Only full pages, which span blocks, so the last page read is empty
+        String prefix = TestWikis.SHARED_PREFIX;
+        assertEquals(TestWikis.NUM_SHARED, TestWikis.matches(offsets, prefix).size());
+        assertEquals(TestWikis.matches(offsets, prefix), TestWikis.queryAll(wiki, prefix));
+
+        // Ends partway through the second page
+        prefix = TestWikis.SHARED_PREFIX + "1";
+        assertTrue(TestWikis.matches(offsets, prefix).size() > Wiki.QUERY_LIMIT);
+        assertEquals(TestWikis.matches(offsets, prefix), TestWikis.queryAll(wiki, prefix));
+    }
+
+    @Test
+    public void firstBlock() {
+        // These sort before the padded first level key of the first block
+        String title = TestWikis.FIRST_TITLE;
+        assertEquals(TestWikis.matches(offsets, title.substring(0, 1)), TestWikis.queryAll(wiki, title.substring(0, 1)));
+        assertEquals((long) offsets.get(title), wiki.getEntryOffset(title));
+        assertEquals((long) offsets.get(title), wiki.getEntryOffsets(List.of(title, "zzz"))[0]);
+    }
+
+    @Test
+    public void batchesInAnyOrderWithDuplicates() {
+        Random random = new Random(3);
+        String[] titles = offsets.keySet().toArray(new String[0]);
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String title = titles[random.nextInt(titles.length)];
+            names.add(random.nextBoolean() ? title : title + '\u0001');
+        }
+        names.addAll(names.subList(0, 100));
+
+        long[] expected = new long[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            expected[i] = offsets.getOrDefault(names.get(i), -1L);
+        }
+        assertArrayEquals(expected, wiki.getEntryOffsets(names));
+        assertArrayEquals(new long[0], wiki.getEntryOffsets(List.of()));
+    }
+
+    @Test
+    public void wholeTitles() {
+        Random random = new Random(2);
+        String[] titles = offsets.keySet().toArray(new String[0]);
+        for (int i = 0; i < 500; i++) {
+            String title = titles[random.nextInt(titles.length)];
+            assertEquals(title, TestWikis.matches(offsets, title), TestWikis.queryAll(wiki, title));
+        }
+    }
+
+    @Test
+    public void noMatches() {
+        SearchResults results = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+
+        wiki.query("zzz", new Wiki.Cursor(), next, results);
+        assertEquals(0, results.size());
+
+        wiki.queryNext("zzz", next, results);
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void queryNextWithoutQueryIsEmpty() {
+        Wiki.Cursor next = new Wiki.Cursor();
+        assertFalse(next.isSet());
+
+        SearchResults results = new SearchResults();
+        wiki.queryNext(TestWikis.SHARED_PREFIX, next, results);
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void pagesDontDependOnEachOther() {
+        // Each cursor holds everything needed to read its page, even after
+        // other queries have run on the same thread
+        String prefix = TestWikis.SHARED_PREFIX;
+        SearchResults first = new SearchResults();
+        Wiki.Cursor next = new Wiki.Cursor();
+        wiki.query(prefix, new Wiki.Cursor(), next, first);
+
+        TestWikis.queryAll(wiki, TestWikis.SHARED_PREFIX + "2");
+
+        SearchResults second = new SearchResults();
+        wiki.queryNext(prefix, next, second);
+
+        Map.Entry<String, Long> expected = TestWikis.matches(offsets, prefix).get(Wiki.QUERY_LIMIT);
+        assertEquals(expected.getKey(), new String(second.keyChars(), second.keyStart(0), second.keyLength(0)));
+        assertEquals((long) expected.getValue(), second.getOffset(0));
+    }
+}
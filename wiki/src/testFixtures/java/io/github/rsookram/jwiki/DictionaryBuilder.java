@@ -0,0 +1,116 @@
+package io.github.rsookram.jwiki;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Picks a preset deflate dictionary out of sample entries. This is a simple
+ * version of the approach used by zstd's dictionary builder: fixed size
+ * segments of the samples are scored by how many samples contain each of
+ * their k-grams, and the best ones are picked greedily, discounting k-grams
+ * which are already covered.
+ */
+public class DictionaryBuilder {
+
+    // Deflate can only refer back this far
+    public static final int MAX_SIZE = 1024 * 32;
+
+    private static final int K = 8;
+    private static final int SEGMENT_LENGTH = 64;
+
+    private DictionaryBuilder() {
+    }
+
+    public static byte[] build(List<byte[]> samples, int size) {
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("dictionary size " + size + " is larger than " + MAX_SIZE);
+        }
+
+        // The number of samples which contain each k-gram
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + K <= sample.length; i++) {
+                long kgram = kgram(sample, i);
+                if (seen.add(kgram)) {
+                    frequencies.merge(kgram, 1, Integer::sum);
+                }
+            }
+        }
+
+        PriorityQueue<Segment> queue = new PriorityQueue<>((a, b) -> Long.compare(b.score, a.score));
+        for (byte[] sample : samples) {
+            for (int start = 0; start + SEGMENT_LENGTH <= sample.length; start += SEGMENT_LENGTH / 2) {
+                Segment segment = new Segment(sample, start);
+                segment.score = score(segment, frequencies);
+                queue.add(segment);
+            }
+        }
+
+        List<Segment> picked = new ArrayList<>();
+        int total = 0;
+        while (total + SEGMENT_LENGTH <= size && !queue.isEmpty()) {
+            Segment segment = queue.poll();
+
+            // Scores only go down as k-grams are covered, so a segment which
+            // is still the best after being rescored is the best overall
+            long score = score(segment, frequencies);
+            if (score < segment.score) {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+            if (score == 0) {
+                break;
+            }
+
+            picked.add(segment);
+            total += SEGMENT_LENGTH;
+            for (int i = segment.start; i + K <= segment.start + SEGMENT_LENGTH; i++) {
+                frequencies.put(kgram(segment.sample, i), 0);
+            }
+        }
+
+        // The most useful segments go at the end, where they're the shortest
+        // distance back from the start of an entry
+        byte[] dictionary = new byte[total];
+        int position = total;
+        for (Segment segment : picked) {
+            position -= SEGMENT_LENGTH;
+            System.arraycopy(segment.sample, segment.start, dictionary, position, SEGMENT_LENGTH);
+        }
+        return dictionary;
+    }
+
+    private static long score(Segment segment, Map<Long, Integer> frequencies) {
+        long score = 0;
+        for (int i = segment.start; i + K <= segment.start + SEGMENT_LENGTH; i++) {
+            score += frequencies.getOrDefault(kgram(segment.sample, i), 0);
+        }
+        return score;
+    }
+
+    private static long kgram(byte[] bytes, int start) {
+        long kgram = 0;
+        for (int i = 0; i < K; i++) {
+            kgram = kgram << 8 | (bytes[start + i] & 0xFF);
+        }
+        return kgram;
+    }
+
+    private static class Segment {
+        final byte[] sample;
+        final int start;
+        long score;
+
+        Segment(byte[] sample, int start) {
+            this.sample = sample;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.rsookram.jwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a {@code .wiki} file with made up Japanese titles and articles,
+ * for benchmarks and tools which can't ship a real dump. The same number of
+ * titles and seed always produce the same file.
+ */
+public class SyntheticWiki {
+
+    public enum ArticleSize {
+        SMALL(1024),
+        MEDIUM(1024 * 16),
+        LARGE(1024 * 256);
+
+        public final int chars;
+
+        ArticleSize(int chars) {
+            this.chars = chars;
+        }
+    }
+
+    // Hiragana, katakana, and a slice of common kanji, so that titles share
+    // prefixes about as often as they do in Japanese Wikipedia.
+    private static final String ALPHABET;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (char ch = 'ぁ'; ch <= 'ゖ'; ch++) {
+            sb.append(ch);
+        }
+        for (char ch = 'ァ'; ch <= 'ヺ'; ch++) {
+            sb.append(ch);
+        }
+        for (char ch = '一'; ch < '一' + 400; ch++) {
+            sb.append(ch);
+        }
+        ALPHABET = sb.toString();
+    }
+
+    private final long seed;
+    private final List<String> titles;
+    private final List<String> entryOrder;
+    private final Map<ArticleSize, List<String>> titlesBySize;
+
+    /**
+     * Picks the titles for a file. Nothing is written until
+     * {@link #write(File)} is called.
+     */
+    public SyntheticWiki(int numTitles, long seed) {
+        this.seed = seed;
+
+        Random random = new Random(seed);
+
+        Set<String> unique = new HashSet<>();
+        unique.add("HTTP_404");
+        unique.add("ウィキペディア");
+        while (unique.size() < numTitles) {
+            unique.add(randomText(random, 1 + random.nextInt(4) + random.nextInt(8)));
+        }
+
+        List<String> titles = new ArrayList<>(unique);
+        Collections.sort(titles);
+        this.titles = Collections.unmodifiableList(titles);
+
+        // Entries are written in a different order than the index, like a
+        // real dump.
+        List<String> entryOrder = new ArrayList<>(titles);
+        Collections.shuffle(entryOrder, random);
+        this.entryOrder = entryOrder;
+
+        titlesBySize = new EnumMap<>(ArticleSize.class);
+        for (ArticleSize size : ArticleSize.values()) {
+            titlesBySize.put(size, new ArrayList<>());
+        }
+        for (int i = 0; i < entryOrder.size(); i++) {
+            titlesBySize.get(sizeOf(i)).add(entryOrder.get(i));
+        }
+    }
+
+    /**
+     * All of the titles in the file, in sorted order.
+     */
+    public List<String> titles() {
+        return titles;
+    }
+
+    public List<String> titles(ArticleSize size) {
+        return titlesBySize.get(size);
+    }
+
+    public void write(File file) throws IOException {
+        write(file, false);
+    }
+
+    /**
+     * Writes the file, with entries compressed using a preset dictionary
+     * built from sample articles if dictionary is true. Other than that, the
+     * articles are the same either way.
+     */
+    public void write(File file, boolean dictionary) throws IOException {
+        Random random = new Random(seed + 1);
+
+        // Article text is made of a limited vocabulary so that it compresses
+        // about as well as real text.
+        String[] words = new String[4096];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = randomText(random, 1 + random.nextInt(4));
+        }
+
+        try (WikiWriter writer = new WikiWriter(file)) {
+            if (dictionary) {
+                Random sampleRandom = new Random(seed + 2);
+                List<byte[]> samples = new ArrayList<>();
+                for (int i = 0; i < 128; i++) {
+                    String title = titles.get(sampleRandom.nextInt(titles.size()));
+                    String html = article(sampleRandom, title, ArticleSize.SMALL.chars, titles, words);
+                    samples.add(html.getBytes(StandardCharsets.UTF_8));
+                }
+                // Larger dictionaries compress a little better, but every
+                // entry pays to load the whole thing into its window
+                writer.addDictionary(DictionaryBuilder.build(samples, 1024 * 8));
+            }
+
+            for (int i = 0; i < entryOrder.size(); i++) {
+                String title = entryOrder.get(i);
+                String html = article(random, title, sizeOf(i).chars, titles, words);
+                writer.add(title, html.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static ArticleSize sizeOf(int entryIndex) {
+        if (entryIndex % 1000 == 999) {
+            return ArticleSize.LARGE;
+        } else if (entryIndex % 50 == 49) {
+            return ArticleSize.MEDIUM;
+        } else {
+            return ArticleSize.SMALL;
+        }
+    }
+
+    private static String article(Random random, String title, int chars, List<String> titles, String[] words) {
+        StringBuilder sb = new StringBuilder(chars + 256);
+        sb.append("<html><head><link rel=\"stylesheet\" href=\"/-/style.css\"></head><body><h1>")
+                .append(title)
+                .append("</h1>");
+
+        while (sb.length() < chars) {
+            sb.append("<p>");
+            for (int i = 0; i < 8; i++) {
+                int numWords = 4 + random.nextInt(12);
+                for (int j = 0; j < numWords; j++) {
+                    sb.append(words[random.nextInt(words.length)]);
+                }
+
+                String link = random.nextInt(10) == 0 ?
+                        randomText(random, 1 + random.nextInt(6)) : // Probably doesn't exist
+                        titles.get(random.nextInt(titles.size()));
+                sb.append("<a href=\"").append(link).append("\">").append(link).append("</a>");
+            }
+            sb.append("</p>");
+        }
+
+        return sb.append("</body></html>").toString();
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // Skew towards the start of the alphabet so that text is more
+            // compressible than uniform noise.
+            int index = (int) (ALPHABET.length() * Math.pow(random.nextDouble(), 3));
+            sb.append(ALPHABET.charAt(index));
+        }
+        return sb.toString();
+    }
+}
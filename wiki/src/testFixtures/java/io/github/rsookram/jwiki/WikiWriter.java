@@ -0,0 +1,267 @@
+package io.github.rsookram.jwiki;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes files in the format read by {@link Wiki}, like wiki-builder does.
+ * Entries are written as they're added (in any order), and the index is
+ * written on {@link #close()}.
+ * <p>
+ * The layout of the file is:
+ * <ul>
+ *     <li>Entries: a 3 byte length, then the zlib compressed HTML</li>
+ *     <li>Optionally, preset dictionaries which entries were compressed
+ *     with (see {@link Dictionaries})</li>
+ *     <li>Second level index: rows of (common prefix length, remaining length,
+ *     remaining UTF-16LE chars, 5 byte entry offset), front coded within
+ *     blocks</li>
+ *     <li>The size of the second level index (plus this field) as a u32</li>
+ *     <li>First level index: the first 4 chars of the first key of each block,
+ *     then the offset of each block into the second level index as a u32</li>
+ *     <li>The size of the first level index (plus this field) as a u16</li>
+ *     <li>If there are dictionaries, a trailer which locates them</li>
+ * </ul>
+ */
+public class WikiWriter implements Closeable {
+
+    private static final int KEY_LENGTH = 4;
+    private static final int MAX_FIRST_LEVEL_INDEX_ROWS = ((1 << 16) - 1 - 2) / 12;
+
+    private final OutputStream out;
+    private final int minBlockSize;
+    private final TreeMap<String, Long> titles = new TreeMap<>();
+    private final List<byte[]> dictionaries = new ArrayList<>();
+
+    private long position;
+
+    public WikiWriter(File file) throws IOException {
+        this(file, 1024 * 4);
+    }
+
+    /**
+     * @param minBlockSize the number of bytes of the second level index to
+     *                     put in each block, before splitting. Blocks are made
+     *                     bigger if needed to fit the first level index.
+     */
+    public WikiWriter(File file, int minBlockSize) throws IOException {
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 1024 * 64);
+        this.minBlockSize = minBlockSize;
+    }
+
+    /**
+     * Adds a preset dictionary which entries can be compressed with (see
+     * {@link DictionaryBuilder}). Returns its index, for
+     * {@link #add(String, byte[], int)}.
+     */
+    public int addDictionary(byte[] dictionary) {
+        if (dictionary.length > DictionaryBuilder.MAX_SIZE) {
+            throw new IllegalArgumentException("dictionary is too large " + dictionary.length);
+        }
+
+        dictionaries.add(dictionary);
+        return dictionaries.size() - 1;
+    }
+
+    /**
+     * Compresses and writes html as the entry for title, using the first
+     * dictionary if there is one. Returns the offset of the entry.
+     */
+    public long add(String title, byte[] html) throws IOException {
+        return add(title, html, dictionaries.isEmpty() ? -1 : 0);
+    }
+
+    /**
+     * Compresses and writes html as the entry for title, using the dictionary
+     * with the given index, or none if it's -1. Returns the offset of the
+     * entry.
+     */
+    public long add(String title, byte[] html, int dictionary) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(html.length / 2);
+        Deflater deflater = new Deflater();
+        try {
+            if (dictionary >= 0) {
+                deflater.setDictionary(dictionaries.get(dictionary));
+            }
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(compressed, deflater)) {
+                dos.write(html);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return addCompressed(title, compressed.toByteArray());
+    }
+
+    /**
+     * Writes an already compressed entry for title. Returns the offset of the
+     * entry.
+     */
+    public long addCompressed(String title, byte[] entry) throws IOException {
+        if (entry.length >= 1 << 24) {
+            throw new IllegalArgumentException("entry for " + title + " is too large " + entry.length);
+        }
+
+        long offset = position;
+        out.write(entry.length);
+        out.write(entry.length >> 8);
+        out.write(entry.length >> 16);
+        out.write(entry);
+        position += 3 + entry.length;
+
+        addAlias(title, offset);
+        return offset;
+    }
+
+    /**
+     * Adds title to the index, pointing at an entry which has already been
+     * written (like a redirect).
+     */
+    public void addAlias(String title, long offset) {
+        if (title.isEmpty() || title.length() > 255) {
+            throw new IllegalArgumentException("invalid title length " + title.length());
+        }
+        titles.put(title, offset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long dictionariesOffset = position;
+            int dictionariesSize = dictionaries.isEmpty() ? 0 : writeDictionaries();
+            writeIndex();
+            if (dictionariesSize > 0) {
+                writeU64(out, dictionariesOffset);
+                writeU32(out, dictionariesSize);
+                writeU32(out, Dictionaries.VERSION);
+                writeU32(out, Dictionaries.MAGIC);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the dictionaries section, and returns its size.
+     */
+    private int writeDictionaries() throws IOException {
+        int size = Integer.BYTES;
+        for (byte[] dictionary : dictionaries) {
+            out.write(dictionary);
+            size += dictionary.length + Integer.BYTES;
+        }
+        for (byte[] dictionary : dictionaries) {
+            writeU32(out, dictionary.length);
+        }
+        writeU32(out, dictionaries.size());
+
+        position += size;
+        return size;
+    }
+
+    private void writeIndex() throws IOException {
+        int blockSize = minBlockSize;
+        long estimatedSize = 0;
+        for (String title : titles.keySet()) {
+            estimatedSize += 2 + title.length() * Character.BYTES + 5;
+        }
+        blockSize = (int) Math.max(blockSize, estimatedSize / (MAX_FIRST_LEVEL_INDEX_ROWS / 2));
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        List<String> blockKeys = new ArrayList<>();
+        List<Integer> blockOffsets = new ArrayList<>();
+
+        String previous = null;
+        int blockStart = 0;
+        for (Map.Entry<String, Long> e : titles.entrySet()) {
+            String title = e.getKey();
+
+            // A block can't start between keys which share their first level
+            // key, otherwise the first level index would skip over the first
+            // of them.
+            boolean startBlock = previous == null ||
+                    (index.size() - blockStart >= blockSize && !firstLevelKey(title).equals(firstLevelKey(previous)));
+            if (startBlock) {
+                blockStart = index.size();
+                blockKeys.add(title);
+                blockOffsets.add(blockStart);
+                previous = "";
+            }
+
+            int commonPrefixLen = 0;
+            while (commonPrefixLen < Math.min(previous.length(), title.length()) &&
+                    previous.charAt(commonPrefixLen) == title.charAt(commonPrefixLen)) {
+                commonPrefixLen++;
+            }
+
+            index.write(commonPrefixLen);
+            index.write(title.length() - commonPrefixLen);
+            for (int i = commonPrefixLen; i < title.length(); i++) {
+                writeChar(index, title.charAt(i));
+            }
+
+            long offset = e.getValue();
+            for (int i = 0; i < 5; i++) {
+                index.write((int) (offset >> (8 * i)));
+            }
+
+            previous = title;
+        }
+
+        if (blockKeys.size() > MAX_FIRST_LEVEL_INDEX_ROWS) {
+            throw new IOException("too many first level index rows " + blockKeys.size());
+        }
+
+        int secondLevelIndexSize = index.size() + Integer.BYTES;
+        if (secondLevelIndexSize > 1 << 30) {
+            throw new IOException("second level index is too large " + secondLevelIndexSize);
+        }
+        index.writeTo(out);
+        writeU32(out, secondLevelIndexSize);
+
+        for (String key : blockKeys) {
+            for (int i = 0; i < KEY_LENGTH; i++) {
+                writeChar(out, i < key.length() ? key.charAt(i) : 0);
+            }
+        }
+        for (int offset : blockOffsets) {
+            writeU32(out, offset);
+        }
+
+        int firstLevelIndexSize = blockKeys.size() * 12 + 2;
+        out.write(firstLevelIndexSize);
+        out.write(firstLevelIndexSize >> 8);
+    }
+
+    private static String firstLevelKey(String key) {
+        return key.length() > KEY_LENGTH ? key.substring(0, KEY_LENGTH) : key;
+    }
+
+    private static void writeChar(OutputStream os, char ch) throws IOException {
+        os.write(ch);
+        os.write(ch >> 8);
+    }
+
+    private static void writeU32(OutputStream os, int value) throws IOException {
+        os.write(value);
+        os.write(value >> 8);
+        os.write(value >> 16);
+        os.write(value >> 24);
+    }
+
+    private static void writeU64(OutputStream os, long value) throws IOException {
+        writeU32(os, (int) value);
+        writeU32(os, (int) (value >>> 32));
+    }
+}